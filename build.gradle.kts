@@ -1,3 +1,5 @@
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
 import proguard.gradle.ProGuardTask
 
 buildscript {
@@ -39,7 +41,133 @@ application {
     mainClass.set("pr0gramm3r101.randomnickgen.MainKt")
 }
 
+// Usernames are made of these, so words with anything else are never used (keep in sync with WordScanner.kt)
+val usernameWord = Regex("[a-z0-9_]{1,16}")
+
+/**
+ * The whitespace-separated words of [file], lowercased.
+ */
+fun readWords(file: File) = file.readText().split(' ', '\n', '\r', '\t').filter { it.isNotEmpty() }.map { it.lowercase() }
+
+fun isUsernameWord(word: String) = usernameWord.matches(word)
+
 tasks {
+    // Packs src/main/resources/words.txt into the binary corpus read by Corpus.kt (keep the layout in sync)
+    val compileWords = register("compileWords") {
+        description = "Validates, dedupes and packs words.txt into the binary word corpus."
+        val source = file("src/main/resources/words.txt")
+        val outputDir = layout.buildDirectory.dir("generated/corpus")
+        val statsFile = layout.buildDirectory.file("reports/corpus/words.txt")
+        inputs.file(source)
+        outputs.dir(outputDir)
+        outputs.file(statsFile)
+
+        doLast {
+            var total = 0
+            var rejected = 0
+            // Sorted by length first, so every length forms one contiguous bucket
+            val words = sortedSetOf(compareBy(String::length).thenBy { it })
+            readWords(source).forEach { word ->
+                total++
+                if (isUsernameWord(word)) words += word else rejected++
+            }
+
+            val maxLength = words.maxOfOrNull { it.length } ?: 0
+            val buckets = IntArray(maxLength + 2)
+            val data = ByteArrayOutputStream()
+            val offsets = IntArray(words.size + 1)
+            words.forEachIndexed { i, word ->
+                buckets[word.length + 1] = i + 1
+                data.write(word.toByteArray(Charsets.US_ASCII))
+                offsets[i + 1] = data.size()
+            }
+            for (length in 1..<buckets.size) buckets[length] = maxOf(buckets[length], buckets[length - 1])
+
+            val output = outputDir.get().asFile.apply { mkdirs() }.resolve("words.bin")
+            DataOutputStream(output.outputStream().buffered()).use {
+                it.writeInt(0x524E4757) // "RNGW"
+                it.writeInt(2)
+                it.writeInt(words.size)
+                it.writeInt(maxLength)
+                buckets.forEach(it::writeInt)
+                offsets.forEach(it::writeInt)
+                data.writeTo(it)
+            }
+
+            val stats = buildString {
+                appendLine("Words read:        $total")
+                appendLine("Rejected:          $rejected")
+                appendLine("Duplicates:        ${total - rejected - words.size}")
+                appendLine("Words packed:      ${words.size}")
+                for (length in 1..maxLength) {
+                    appendLine("  length ${"%-9s".format("$length:")}${buckets[length + 1] - buckets[length]}")
+                }
+                appendLine("Corpus size:       ${output.length()} bytes")
+            }
+            statsFile.get().asFile.apply { parentFile.mkdirs() }.writeText(stats)
+            logger.info(stats)
+        }
+    }
+
+    // Trains the character model read by MarkovWordSource.kt on words.txt (keep the layout in sync)
+    val trainMarkov = register("trainMarkov") {
+        description = "Trains the order-3 character model for made up words on words.txt."
+        val source = file("src/main/resources/words.txt")
+        val outputDir = layout.buildDirectory.dir("generated/markov")
+        inputs.file(source)
+        outputs.dir(outputDir)
+
+        doLast {
+            val order = 3
+            val chars = "\u0000abcdefghijklmnopqrstuvwxyz0123456789_"
+            val alphabet = chars.length
+            var contexts = 1
+            repeat(order) { contexts *= alphabet }
+
+            val words = readWords(source).filter(::isUsernameWord).toSet()
+            val counts = IntArray(contexts * alphabet)
+            for (word in words) {
+                var context = 0
+                for (char in word) {
+                    val symbol = chars.indexOf(char)
+                    counts[context * alphabet + symbol]++
+                    context = (context * alphabet + symbol) % contexts
+                }
+                counts[context * alphabet]++
+            }
+
+            val starts = IntArray(contexts + 1)
+            for (context in 0..<contexts) {
+                starts[context + 1] = starts[context] + (0..<alphabet).count { counts[context * alphabet + it] > 0 }
+            }
+            val output = outputDir.get().asFile.apply { mkdirs() }.resolve("markov.bin")
+            DataOutputStream(output.outputStream().buffered()).use {
+                it.writeInt(0x524E474D) // "RNGM"
+                it.writeInt(1)
+                it.writeInt(order)
+                it.writeInt(starts[contexts])
+                starts.forEach(it::writeInt)
+                for (i in counts.indices) if (counts[i] > 0) it.writeByte(i % alphabet)
+                for (context in 0..<contexts) {
+                    var total = 0
+                    for (symbol in 0..<alphabet) {
+                        val count = counts[context * alphabet + symbol]
+                        if (count == 0) continue
+                        total += count
+                        it.writeInt(total)
+                    }
+                }
+            }
+            logger.info("Trained an order-$order model on ${words.size} words, ${starts[contexts]} transitions")
+        }
+    }
+
+    processResources {
+        from(compileWords)
+        from(trainMarkov)
+        exclude("words.txt")
+    }
+
     val fatJar = register<Jar>("fatJar") {
         dependsOn("compileJava", "compileKotlin", "processResources") // We need this for Gradle optimization to work
         archiveClassifier.set("standalone") // Naming the jar
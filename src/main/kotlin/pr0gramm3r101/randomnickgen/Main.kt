@@ -5,40 +5,38 @@ import pr0gramm3r101.logging.Loglevel
 import pr0gramm3r101.logging.NullLogger
 import pr0gramm3r101.randomnickgen.apis.MinecraftAPI
 import pr0gramm3r101.randomnickgen.apis.WordAPI
+import pr0gramm3r101.randomnickgen.cache.AvailabilityCache
+import pr0gramm3r101.randomnickgen.cache.TinyLfuCache
+import pr0gramm3r101.randomnickgen.corpus.Corpus
+import pr0gramm3r101.randomnickgen.corpus.IndexedWordSource
+import pr0gramm3r101.randomnickgen.corpus.MarkovWordSource
+import pr0gramm3r101.randomnickgen.corpus.StreamingWordSample
+import pr0gramm3r101.randomnickgen.corpus.WeightedWordSource
+import pr0gramm3r101.randomnickgen.corpus.WordFileIndex
+import pr0gramm3r101.randomnickgen.filter.Blocklist
+import pr0gramm3r101.randomnickgen.filter.UsernameValidator
+import pr0gramm3r101.randomnickgen.generator.IndexPermutation
+import pr0gramm3r101.randomnickgen.generator.LeetTransform
+import pr0gramm3r101.randomnickgen.generator.MAX_LENGTH
+import pr0gramm3r101.randomnickgen.generator.MIN_LENGTH
+import pr0gramm3r101.randomnickgen.generator.NameBuffer
+import pr0gramm3r101.randomnickgen.generator.NameConstraints
+import pr0gramm3r101.randomnickgen.generator.NameSpace
+import pr0gramm3r101.randomnickgen.generator.NicknameGenerator
+import pr0gramm3r101.randomnickgen.generator.Pattern
+import pr0gramm3r101.randomnickgen.generator.Pipeline
+import pr0gramm3r101.randomnickgen.generator.newRandomGenerator
+import pr0gramm3r101.randomnickgen.unique.PackedNameSet
 import pr0gramm3r101.util.io.FileUtil
 import java.io.IOException
-import java.util.*
-import kotlin.random.Random
-
-
-// Global constants
-private val characterNumberMappings: Map<Char, Char> = mapOf(
-    'o' to '0',
-    'i' to '1',
-    'l' to '1',
-    'f' to '4',
-    'a' to '4',
-    's' to '5',
-    'e' to '3'
-)
-
-private val prefixes = arrayOf(
-    "the",
-    "get",
-    "not",
-    "great",
-    "good",
-    "bad"
-)
-
-private val suffixes = arrayOf(
-    "lol",
-    "xd",
-    "error",
-    "4k",
-    "2k",
-    "ed"
-)
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.random.RandomGenerator
+
 
 // Arguments
 private var quiet = false
@@ -47,120 +45,267 @@ private var noExistenceCheck = false
 private var count: Int? = null
 private var noLog = false
 private var save = false
+private val words = mutableListOf<String>()
+private var streamWords = false
+private var markov = false
+private var startsWith = ""
+private var minLength = MIN_LENGTH
+private var maxLength = MAX_LENGTH
+private var excludedChars = ""
+private var pipelineFile: String? = null
+private var patternText: String? = null
+private var blocklistFile: String? = null
+private var seed: Long? = null
+private var threads = 1
+private var inFlight = 8
+private var cacheFile: String? = "./.nick_cache"
+private var memoryCacheSize = 0
+private var takenTtl = AvailabilityCache.DEFAULT_TAKEN_TTL
+private var freeTtl = AvailabilityCache.DEFAULT_FREE_TTL
+private var unordered = false
+private var unique = false
+private var enumerate = false
+private var shard = 0
+private var shards = 1
 
 // Saved nicknames
-private var generatedNicknames = ""
+private val generatedNicknames = StringBuilder()
 private var nicknamesGenerated = 0
 
-// Logger
-lateinit var logger: Logger
+// Logger, silent unless main sets one up, so the APIs can be used without the CLI
+var logger: Logger = NullLogger()
 
-fun _generateNickname(forceTruncate: Boolean = false, noExistenceCheck: Boolean = false): String? {
-    logger.log(Loglevel.INFO, "Starting RandomNickGen, made by denis0001-dev")
+// The pipeline from --pipeline, compiled once and shared by all generators
+private var pipeline: Pipeline? = null
 
-    logger.log(Loglevel.INFO, "Generating a random word")
-    var name = WordAPI.randomWord()
-    logger.log(Loglevel.DEBUG, "Random word generated: $name")
+// The limits from --starts-with, --min-length, --max-length, --no-digits and --no-underscores
+private var constraints = NameConstraints.NONE
 
-    // Randomly add prefixes and suffixes
-    logger.log(Loglevel.INFO, "Adding random prefixes & suffixes...")
-    if (Math.random() < 0.2) {
-        var prefix = prefixes.random()
-        if (Random.nextBoolean()) {
-            prefix += "_"
-        }
+// The pattern from --pattern, compiled once and shared by all generators
+private var pattern: Pattern? = null
 
-        name = prefix + name
-    }
-    if (Math.random() < 0.2) {
-        var suffix = suffixes.random()
-        if (Random.nextBoolean()) {
-            suffix = "_$suffix"
-        }
+// The names generated so far, with --unique
+private var uniqueNames: PackedNameSet? = null
 
-        name += suffix
-    }
+// With --enumerate: all possible names, and the order to walk this run's shard of them in
+private var nameSpace: NameSpace? = null
+private var permutation: IndexPermutation? = null
+private var shardStart = 0L
+
+// The source of all randomness, seeded by --seed
+private val random by lazy { newRandomGenerator(seed) }
+
+// Lookups that failed since the last one that worked
+private val failedLookups = AtomicInteger()
+private const val MAX_FAILED_LOOKUPS = 10
+
+// The permutation of sharded runs without --seed
+private const val SHARD_KEY = 0x5EED_5A4D_0F5E_ED00L
+
+// With --unique, how many names in a row may have been generated before until there are no new ones left
+private const val MAX_DUPLICATES = 100_000
+
+// One generator per thread, each with its own name buffer and random stream split off the main one
+private val generators = ThreadLocal.withInitial {
+    NicknameGenerator(
+        WordAPI.words,
+        pipeline ?: Pipeline.DEFAULT,
+        synchronized(random) { random.split() },
+        pattern,
+        constraints
+    )
+}
+
+fun _generateNickname(forceTruncate: Boolean = false, noExistenceCheck: Boolean = false) =
+    nextNickname(generators.get(), forceTruncate, noExistenceCheck)
+
+private fun nextNickname(generator: NicknameGenerator, forceTruncate: Boolean, noExistenceCheck: Boolean) =
+    nextCandidate(generator, forceTruncate).takeIf { isFree(it, noExistenceCheck) }
+
+// A new name that hasn't been checked yet
+private fun nextCandidate(generator: NicknameGenerator, forceTruncate: Boolean): String {
+    logger.log(Loglevel.INFO, "Starting RandomNickGen, made by denis0001-dev")
+
+    logger.log(Loglevel.INFO, "Generating a random nickname")
+    val name = nextUnique(generator, forceTruncate).toString()
     logger.log(Loglevel.DEBUG, "Result: $name")
+    return name
+}
 
-    var nameArray = name.toCharArray()
+/**
+ * @return The next name of [generator] that wasn't generated before with `--unique`, or just the next one without.
+ * The name is in the generator's buffer until the next call.
+ * @throws IllegalStateException if [MAX_DUPLICATES] names in a row were generated before,
+ * since the words and pipeline probably can't make any new ones
+ */
+private fun nextUnique(generator: NicknameGenerator, forceTruncate: Boolean): CharSequence {
+    val names = uniqueNames ?: return generator.next(forceTruncate)
+    repeat(MAX_DUPLICATES) {
+        val name = generator.next(forceTruncate)
+        if (names.add(name)) return name
+    }
+    throw IllegalStateException(
+        "No new names in $MAX_DUPLICATES tries, the words and pipeline can't make many more than ${names.size}"
+    )
+}
 
-    // Randomly change letters to numbers
-    logger.log(Loglevel.INFO, "Randomly changing letters to numbers...")
-    for (i in nameArray.indices) {
-        if (Math.random() < 0.2) {
-            characterNumberMappings[nameArray[i]]?.let {
-                nameArray[i] = it
+private fun isFree(name: String, noExistenceCheck: Boolean): Boolean {
+    logger.log(Loglevel.INFO, "Checking the name")
+    if (!noExistenceCheck) {
+        when (MinecraftAPI.check(name)) {
+            MinecraftAPI.Status.FREE -> failedLookups.set(0)
+            MinecraftAPI.Status.TAKEN -> {
+                failedLookups.set(0)
+                logger.log(Loglevel.WARN, "The name is taken, retrying...")
+                return false
+            }
+            else -> {
+                lookupFailed(listOf(name), null)
+                return false
             }
         }
+    } else {
+        logger.log(Loglevel.WARN, "The name is taken, but still returned because of --no-existence-check")
     }
-    name = String(nameArray)
-    logger.log(Loglevel.DEBUG, "Result: $name")
+    logger.log(Loglevel.INFO, "The name is OK!")
+    return true
+}
+
+/**
+ * Passes [count] names from [generator] that aren't taken to [consumer].
+ *
+ * The generator keeps filling batches while up to [inFlight] of them are being checked, and the results are passed
+ * on in the order the batches were made. New batches are only made while fewer names are in flight than are still
+ * needed, and the ones still in flight once [count] names are found are cancelled.
+ * Names Minecraft doesn't allow never get this far, the pipeline's [UsernameValidator] filter leaves them out.
+ */
+private fun checkedNicknames(generator: NicknameGenerator, count: Int, consumer: (String) -> Unit) {
+    val requests = ArrayDeque<Pair<List<String>, CompletableFuture<Set<String>>>>(inFlight)
+    var remaining = count
+    var pending = 0
+    while (remaining > 0) {
+        while (requests.size < inFlight && pending < remaining) {
+            // A request costs the same for any number of names, so batches are always full
+            val batch = ArrayList<String>(MinecraftAPI.BULK_LIMIT)
+            while (batch.size < MinecraftAPI.BULK_LIMIT) {
+                batch += nextCandidate(generator, forceTruncate)
+            }
+            logger.log(Loglevel.INFO, "Checking ${batch.size} names")
+            requests.addLast(batch to MinecraftAPI.takenUsernamesAsync(batch))
+            pending += batch.size
+        }
 
-    // Randomly add underscores
-    logger.log(Loglevel.INFO, "Randomly adding underscores...")
-    if (Math.random() < 0.3) {
-        name = "_$name"
+        val (batch, request) = requests.removeFirst()
+        pending -= batch.size
+        val taken = try {
+            request.join()
+        } catch (e: CompletionException) {
+            lookupFailed(batch, e.cause)
+            continue
+        }
+        failedLookups.set(0)
+        checkedBatch(batch, taken) {
+            if (remaining > 0) consumer(it)
+            remaining--
+        }
     }
-    if (Math.random() < 0.3) {
-        name += "_"
+    requests.forEach { it.second.cancel(true) }
+}
+
+/**
+ * Passes the names of [batch] that aren't taken to [consumer].
+ */
+private fun checkBatch(batch: List<String>, consumer: (String) -> Unit) {
+    logger.log(Loglevel.INFO, "Checking ${batch.size} names")
+    val taken = try {
+        MinecraftAPI.takenUsernames(batch)
+    } catch (e: IOException) {
+        return lookupFailed(batch, e)
     }
-    logger.log(Loglevel.DEBUG, "Result: $name")
+    failedLookups.set(0)
+    checkedBatch(batch, taken, consumer)
+}
 
-    // Random capitalization
-    logger.log(Loglevel.INFO, "Adding random capitalization...")
-    if (Random.nextBoolean()) {
-        name = name.replaceFirstChar { it.uppercase() }
-    } else if (Math.random() < 0.1) {
-        name = name.uppercase(Locale.getDefault())
-    } else if (Math.random() < 0.2) {
-        nameArray = name.toCharArray()
-
-        for (i in nameArray.indices) {
-            if (Random.nextBoolean()) {
-                nameArray[i] = nameArray[i].uppercaseChar()
-            }
-        }
-        name = String(nameArray)
+/**
+ * Leaves out [names] that couldn't be checked, since they may well be taken,
+ * and gives up once lookups have failed [MAX_FAILED_LOOKUPS] times in a row.
+ */
+private fun lookupFailed(names: List<String>, cause: Throwable?) {
+    logger.log(Loglevel.WARN, "Couldn't check $names, leaving them out")
+    if (failedLookups.incrementAndGet() >= MAX_FAILED_LOOKUPS) {
+        throw IllegalStateException("The Minecraft API failed $MAX_FAILED_LOOKUPS times in a row, giving up", cause)
     }
-    logger.log(Loglevel.DEBUG, "Result: $name")
+}
 
-    // Check if the name is 3-16 characters long
-    logger.log(Loglevel.INFO, "Checking the name")
-    if (name.length > 16) {
-        if (forceTruncate) {
-            logger.log(Loglevel.WARN, "The name was too long, truncated to first 16 characters")
+/**
+ * Passes the names of [batch] that aren't in [taken] to [consumer].
+ */
+private fun checkedBatch(batch: List<String>, taken: Set<String>, consumer: (String) -> Unit) {
+    for (name in batch) {
+        if (name.lowercase() in taken) {
+            logger.log(Loglevel.WARN, "$name is taken, retrying...")
         } else {
-            logger.log(Loglevel.WARN, "The name is too long, retrying...")
-            return null
+            consumer(name)
         }
     }
-    if (name.length < 3) {
-        logger.log(Loglevel.WARN, "The name is too short, retrying...")
-        return null
+}
+
+fun generateNickname(forceTruncate: Boolean = false, noExistenceCheck: Boolean = false): String? {
+    val result = _generateNickname(forceTruncate, noExistenceCheck)
+    if (save && result != null) saveNickname(result)
+    return result
+}
+
+private fun saveNickname(name: CharSequence) {
+    generatedNicknames.append(' ').append(name)
+    if (++nicknamesGenerated >= 1000) {
+        FileUtil.writeToFile(FileUtil.token.APPEND, "./.generated_nicks", generatedNicknames.toString())
+        nicknamesGenerated = 0
+        generatedNicknames.setLength(0)
     }
+}
+
+/**
+ * Generates [count] names with a generator of their own for [ParallelGeneration], one name per line.
+ */
+private fun generateChunk(start: Int, count: Int, random: RandomGenerator): StringBuilder {
+    nameSpace?.let { return enumerateChunk(it, start, count, random) }
+    val generator = NicknameGenerator(WordAPI.words, pipeline ?: Pipeline.DEFAULT, random, pattern, constraints)
+    val chunk = StringBuilder(count * (MAX_LENGTH + 1))
     if (!noExistenceCheck) {
-        if (MinecraftAPI.usernameExists(name)) {
-            logger.log(Loglevel.WARN, "The name is taken, retrying...")
-            return null
-        }
-    } else {
-        logger.log(Loglevel.WARN, "The name is taken, but still returned because of --no-existence-check")
+        checkedNicknames(generator, count) { chunk.append(it).append('\n') }
+        return chunk
     }
-    logger.log(Loglevel.INFO, "The name is OK!")
-    return name
+    repeat(count) {
+        // Appended straight from the generator's buffer, so no String is created
+        chunk.append(nextUnique(generator, forceTruncate)).append('\n')
+    }
+    return chunk
 }
 
-fun generateNickname(forceTruncate: Boolean = false, noExistenceCheck: Boolean = false): String? {
-    val result = _generateNickname(forceTruncate, noExistenceCheck)
-    if (save) {
-        generatedNicknames += " $result"
-        if (nicknamesGenerated >= 1000) {
-            FileUtil.writeToFile(FileUtil.token.APPEND, "./.generated_nicks", generatedNicknames)
-            nicknamesGenerated = 0
-            generatedNicknames = ""
+/**
+ * Writes the names at positions [start] to [start] + [count] of the shard's permutation for [ParallelGeneration],
+ * leaving out the ones that are taken.
+ */
+private fun enumerateChunk(space: NameSpace, start: Int, count: Int, random: RandomGenerator): StringBuilder {
+    val name = NameBuffer()
+    val chunk = StringBuilder(count * (MAX_LENGTH + 1))
+    val batch = ArrayList<String>(MinecraftAPI.BULK_LIMIT)
+    for (i in start..<start + count) {
+        space.name(permutation!![shardStart + i], name, random)
+        if ((pipeline ?: Pipeline.DEFAULT).filters.any { !it.accepts(name) }) continue
+        if (noExistenceCheck) {
+            chunk.append(name).append('\n')
+            continue
+        }
+        batch += name.toString()
+        if (batch.size == MinecraftAPI.BULK_LIMIT) {
+            checkBatch(batch) { chunk.append(it).append('\n') }
+            batch.clear()
         }
     }
-    return result
+    if (batch.isNotEmpty()) checkBatch(batch) { chunk.append(it).append('\n') }
+    return chunk
 }
 
 @Throws(IOException::class)
@@ -170,13 +315,48 @@ fun main(args: Array<String>) {
     for (it in args) {
         when (prevArg) {
             "--count" -> count = it.toInt()
+            "--words" -> words += it
+            "--pipeline" -> pipelineFile = it
+            "--pattern" -> patternText = it
+            "--blocklist" -> blocklistFile = it
+            "--api-url" -> MinecraftAPI.baseUrl = it.removeSuffix("/")
+            "--timeout" -> Duration.ofMillis(it.toLong()).let { timeout ->
+                MinecraftAPI.connectTimeout = timeout
+                MinecraftAPI.requestTimeout = timeout
+            }
+            "--starts-with" -> startsWith = it.lowercase()
+            "--min-length" -> minLength = it.toInt()
+            "--max-length" -> maxLength = it.toInt()
+            "--seed" -> seed = it.toLong()
+            "--shard" -> {
+                // Shards count from 1 on the command line
+                shard = it.substringBefore('/').toInt() - 1
+                shards = it.substringAfter('/').toInt()
+            }
+            "--cache" -> cacheFile = it
+            "--memory-cache" -> memoryCacheSize = it.toInt()
+            "--taken-ttl" -> takenTtl = Duration.ofHours(it.toLong())
+            "--free-ttl" -> freeTtl = Duration.ofHours(it.toLong())
+            "--rate" -> MinecraftAPI.requestsPerSecond = it.toDouble()
+            "--in-flight" -> inFlight = maxOf(1, it.toInt())
+            "--threads" -> threads = it.toInt().let { threads ->
+                if (threads <= 0) Runtime.getRuntime().availableProcessors() else threads
+            }
         }
         when (it) {
             "--quiet", "-q" -> quiet = true
             "--force-truncate", "-t" -> forceTruncate = true
             "--no-existence-check", "-c" -> noExistenceCheck = true
             "--no-log" -> noLog = true
+            "--no-cache" -> cacheFile = null
             "--save", "-s" -> save = true
+            "--stream-words" -> streamWords = true
+            "--markov", "-m" -> markov = true
+            "--no-digits" -> excludedChars += "0123456789"
+            "--no-underscores" -> excludedChars += "_"
+            "--unordered" -> unordered = true
+            "--unique", "-u" -> unique = true
+            "--enumerate", "-e" -> enumerate = true
         }
         prevArg = it
     }
@@ -188,22 +368,181 @@ fun main(args: Array<String>) {
 "Arguments: quiet = $quiet, " +
         "forceTruncate = $forceTruncate, " +
         "noExistenceCheck = $noExistenceCheck, " +
-        "count = $count"
+        "count = $count, " +
+        "words = $words, " +
+        "streamWords = $streamWords, " +
+        "markov = $markov, " +
+        "startsWith = $startsWith, " +
+        "minLength = $minLength, " +
+        "maxLength = $maxLength, " +
+        "excludedChars = $excludedChars, " +
+        "pipeline = $pipelineFile, " +
+        "pattern = $patternText, " +
+        "blocklist = $blocklistFile, " +
+        "seed = $seed, " +
+        "threads = $threads, " +
+        "unordered = $unordered, " +
+        "unique = $unique, " +
+        "cache = $cacheFile, " +
+        "memoryCache = $memoryCacheSize, " +
+        "enumerate = $enumerate, " +
+        "shard = ${shard + 1}/$shards"
     )
 
-    if (count != null) {
-        for (i in 0..count!!) {
-            val name = run {
-                while (true) {
-                    return@run generateNickname(
-                        forceTruncate = forceTruncate,
-                        noExistenceCheck = noExistenceCheck
-                    ) ?: continue
+    cacheFile?.takeIf { !noExistenceCheck }?.let {
+        MinecraftAPI.cache = AvailabilityCache.open(Path.of(it), takenTtl, freeTtl)
+        if (MinecraftAPI.cache == null) logger.log(Loglevel.WARN, "$it is in use by another run, not caching")
+    }
+    if (memoryCacheSize > 0 && !noExistenceCheck) {
+        MinecraftAPI.memoryCache = TinyLfuCache(memoryCacheSize, takenTtl, freeTtl)
+    }
+
+    pipelineFile?.let {
+        logger.log(Loglevel.INFO, "Loading pipeline $it")
+        pipeline = Pipeline.load(Path.of(it))
+    }
+
+    // Custom pipelines, patterns and word lists can make names Minecraft doesn't allow, those are never checked
+    pipeline = (pipeline ?: Pipeline.DEFAULT).withFilter(UsernameValidator)
+
+    blocklistFile?.let {
+        // Leet replacements of the pipeline are matched too
+        val base = pipeline ?: Pipeline.DEFAULT
+        val blocklist = Blocklist.load(Path.of(it), base.transforms.filterIsInstance<LeetTransform>())
+        logger.log(Loglevel.INFO, "Loaded blocklist $it, ${blocklist.states} states")
+        pipeline = base.withFilter(blocklist)
+    }
+
+    if (unique) {
+        // Names that turn out to be taken are remembered too, so the set grows past --count when checking
+        uniqueNames = PackedNameSet((count ?: 0).coerceIn(1024, PackedNameSet.MAX_CAPACITY))
+    }
+
+    constraints = NameConstraints(startsWith, minLength, maxLength, excludedChars)
+
+    // A list is weighted if its name ends with ":<weight>", and its words are if they're written as "word:weight"
+    val wordWeights = words.map { it.substringAfterLast(':', "").toDoubleOrNull() }
+    if (markov) {
+        if (words.isEmpty()) {
+            logger.log(Loglevel.INFO, "Loading the built-in word model")
+            WordAPI.source = requireNotNull(MarkovWordSource.resource("/markov.bin", WordAPI.corpus)) {
+                "The built-in word model is missing, it's made by the trainMarkov Gradle task"
+            }
+        } else {
+            if (words.size > 1) logger.log(Loglevel.WARN, "--markov only trains on the first word list")
+            logger.log(Loglevel.INFO, "Training a word model on ${words[0]}")
+            // The list is the dictionary too, so the words that come out aren't just words of the list
+            val dictionary = Files.newInputStream(Path.of(words[0])).use { Corpus.compile(it) }
+            WordAPI.source = MarkovWordSource.train(Path.of(words[0]), dictionary = dictionary)
+        }
+    } else if (words.size > 1 || wordWeights.any { it != null } || (words.isNotEmpty() && WeightedWordSource.isWeighted(Path.of(words[0])))) {
+        if (streamWords) {
+            logger.log(Loglevel.WARN, "Weighted word lists are loaded into memory, --stream-words is ignored")
+        }
+        logger.log(Loglevel.INFO, "Loading weighted word lists $words")
+        WordAPI.source = WeightedWordSource.load(words.mapIndexed { i, it ->
+            val weight = wordWeights[i]
+            WeightedWordSource.WeightedList(Path.of(if (weight != null) it.substringBeforeLast(':') else it), weight ?: 1.0)
+        })
+    } else if (words.isNotEmpty()) {
+        if (enumerate || !constraints.isEmpty) {
+            // Enumeration and constraints need every word numbered and sorted
+            if (streamWords) logger.log(Loglevel.WARN, "--stream-words doesn't work with --enumerate or name constraints, ignoring it")
+            logger.log(Loglevel.INFO, "Loading word list ${words[0]}")
+            WordAPI.source = Files.newInputStream(Path.of(words[0])).use { Corpus.compile(it) }
+        } else if (streamWords) {
+            logger.log(Loglevel.INFO, "Sampling words from ${words[0]}")
+            WordAPI.source = StreamingWordSample.sample(Path.of(words[0]), (count ?: 0) + 1, random)
+        } else {
+            logger.log(Loglevel.INFO, "Opening word list ${words[0]}")
+            WordAPI.source = WordFileIndex.open(Path.of(words[0]))
+        }
+    }
+
+    if (!constraints.isEmpty) {
+        val words = requireNotNull(WordAPI.words as? IndexedWordSource) {
+            "Name constraints need a single word list, they don't work with weighted word lists or --markov"
+        }
+        WordAPI.source = constraints.apply(words)
+        pipeline = constraints.apply(pipeline ?: Pipeline.DEFAULT)
+        val matching = WordAPI.words.count(1, maxLength)
+        logger.log(Loglevel.INFO, "$matching words match the constraints")
+        require(matching > 0) { "No words match the constraints" }
+    }
+
+    patternText?.let {
+        logger.log(Loglevel.INFO, "Compiling pattern $it")
+        pattern = Pattern.compile(it, WordAPI.words, pipeline ?: Pipeline.DEFAULT)
+    }
+
+    if (enumerate) {
+        require(pattern == null) { "--enumerate doesn't work with --pattern" }
+        if (count == null) {
+            logger.log(Loglevel.WARN, "--enumerate only works with --count, ignoring it")
+        } else {
+            val words = requireNotNull(WordAPI.words as? IndexedWordSource) {
+                "--enumerate needs a single word list, it doesn't work with weighted word lists or --markov"
+            }
+            val space = NameSpace(words, pipeline ?: Pipeline.DEFAULT, constraints.minLength, constraints.maxLength)
+            val range = space.shard(shard, shards)
+            logger.log(Loglevel.INFO, "${space.size} possible nicknames, shard ${shard + 1}/$shards has ${range.last - range.first + 1}")
+            nameSpace = space
+            // Every run with the same seed walks the same permutation, so shards never overlap.
+            // Sharded runs without a seed all use the same fixed permutation, a random one would overlap
+            val key = if (seed == null && shards > 1) SHARD_KEY else random.nextLong()
+            permutation = IndexPermutation(space.size, key)
+            shardStart = range.first
+            count = minOf(count!!.toLong(), range.last - range.first + 1).toInt()
+        }
+    }
+
+    if (count != null && (threads > 1 || nameSpace != null)) {
+        logger.log(Loglevel.INFO, "Generating $count nicknames on $threads threads")
+        val output = System.out.bufferedWriter()
+        ParallelGeneration(threads, !unordered, random, ::generateChunk).run(count!!) { chunk ->
+            if (quiet) {
+                output.append(chunk)
+                if (!noExistenceCheck) output.flush()
+            }
+            if (save || !noLog) {
+                for (name in chunk.lineSequence()) {
+                    if (name.isEmpty()) continue
+                    if (save) saveNickname(name)
+                    logger.log(Loglevel.INFO, "Generated nickname: $name")
                 }
             }
-            if (quiet) println(name)
+        }
+        output.flush()
+    } else if (count != null) {
+        // Nothing else is printed in quiet mode, so the names can go through one buffered writer
+        val output = System.out.bufferedWriter()
+        fun emit(name: String) {
+            if (quiet) {
+                output.write(name)
+                output.newLine()
+                // Checked names come in slowly, so show each one right away
+                if (!noExistenceCheck) output.flush()
+            }
             logger.log(Loglevel.INFO, "Generated nickname: $name")
         }
+        if (noExistenceCheck) {
+            repeat(count!!) {
+                var name: String?
+                do {
+                    name = generateNickname(
+                        forceTruncate = forceTruncate,
+                        noExistenceCheck = true
+                    )
+                } while (name == null)
+                emit(name)
+            }
+        } else {
+            checkedNicknames(generators.get(), count!!) {
+                if (save) saveNickname(it)
+                emit(it)
+            }
+        }
+        output.flush()
     } else {
         while (true) {
             val name = generateNickname(
@@ -222,7 +561,8 @@ fun main(args: Array<String>) {
             }
         }
     }
+    MinecraftAPI.memoryCache?.let { logger.log(Loglevel.INFO, "Memory cache: $it") }
     if (save) {
-        FileUtil.writeToFile(FileUtil.token.APPEND, "./.generated_nicks", generatedNicknames)
+        FileUtil.writeToFile(FileUtil.token.APPEND, "./.generated_nicks", generatedNicknames.toString())
     }
 }
\ No newline at end of file
@@ -0,0 +1,69 @@
+package pr0gramm3r101.randomnickgen
+
+import java.util.ArrayDeque
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorCompletionService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.random.RandomGenerator
+
+/**
+ * Generates nicknames in chunks on a pool of worker threads.
+ *
+ * Every chunk gets its own random stream, split off [random] on the calling thread in chunk order,
+ * so which names a chunk contains doesn't depend on which worker runs it or when.
+ * In [ordered] mode chunks are handed out in order, so a seeded run always gives the same output;
+ * otherwise every chunk is handed out as soon as it's done.
+ *
+ * @param generateChunk Generates the names from the given number on, as many as given, with the given random stream.
+ * Returns them as text with one name per line
+ */
+internal class ParallelGeneration(
+    private val threads: Int,
+    private val ordered: Boolean,
+    private val random: RandomGenerator.SplittableGenerator,
+    private val generateChunk: (start: Int, count: Int, random: RandomGenerator) -> StringBuilder
+) {
+    /**
+     * Generates [count] names and passes every finished chunk to [consumer] on the calling thread.
+     */
+    fun run(count: Int, consumer: (StringBuilder) -> Unit) {
+        val executor = Executors.newFixedThreadPool(threads)
+        try {
+            // Only unordered mode takes chunks from the completion queue, ordered mode would leave them all in it
+            val completion = if (ordered) null else ExecutorCompletionService<StringBuilder>(executor)
+            // Keep a few chunks per thread in flight, so workers never wait but memory stays bounded
+            val pending = ArrayDeque<Future<StringBuilder>>()
+            var submitted = 0
+            var done = 0
+            val chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE
+
+            while (done < chunks) {
+                while (submitted < chunks && pending.size < threads * 2) {
+                    val start = submitted * CHUNK_SIZE
+                    val size = minOf(CHUNK_SIZE, count - start)
+                    val chunkRandom = random.split()
+                    val task = { generateChunk(start, size, chunkRandom) }
+                    pending += completion?.submit(task) ?: executor.submit(task)
+                    submitted++
+                }
+                val chunk = completion?.take()?.also { pending.remove(it) } ?: pending.poll()
+                consumer(
+                    try {
+                        chunk.get()
+                    } catch (e: ExecutionException) {
+                        // Fail like the sequential generation would
+                        throw e.cause ?: e
+                    }
+                )
+                done++
+            }
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    private companion object {
+        const val CHUNK_SIZE = 4096
+    }
+}
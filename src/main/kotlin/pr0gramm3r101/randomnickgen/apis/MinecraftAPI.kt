@@ -1,42 +1,232 @@
 package pr0gramm3r101.randomnickgen.apis
 
-import org.json.JSONObject
+import org.json.JSONArray
+import org.json.JSONException
 import pr0gramm3r101.logging.Loglevel
+import pr0gramm3r101.randomnickgen.cache.AvailabilityCache
+import pr0gramm3r101.randomnickgen.cache.TinyLfuCache
+import pr0gramm3r101.randomnickgen.filter.UsernameValidator
 import pr0gramm3r101.randomnickgen.logger
+import java.io.IOException
 import java.io.PrintWriter
 import java.io.StringWriter
-import java.net.HttpURLConnection
 import java.net.URI
+import java.net.http.HttpClient
+import java.net.http.HttpRequest
+import java.net.http.HttpResponse
+import java.time.Duration
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
 
 object MinecraftAPI {
-    private const val URL: String = "https://api.mojang.com/users/profiles/minecraft"
-
-    fun usernameExists(username: String): Boolean {
-        try {
-            val obj = URI("$URL/$username").toURL()
-            val con = obj.openConnection() as HttpURLConnection
-
-            con.requestMethod = "GET"
-            con.setRequestProperty("User-Agent", "Mozilla/5.0")
-            con.connectTimeout = 5000
-            con.readTimeout = 5000
-
-            val response = try {
-                con.inputStream.use { it.readAllBytes() }
-            } catch (e: Exception) {
-                con.errorStream.use { it.readAllBytes() }
+    /**
+     * The most names the bulk profiles endpoint takes per request.
+     */
+    const val BULK_LIMIT = 10
+
+    /**
+     * The API to send requests to, can be pointed at a local stub.
+     */
+    var baseUrl = "https://api.mojang.com"
+
+    /**
+     * How long to wait for a connection. Set it before the first request, the connections are kept afterwards.
+     */
+    var connectTimeout: Duration = Duration.ofSeconds(5)
+
+    /**
+     * How long to wait for a response.
+     */
+    var requestTimeout: Duration = Duration.ofSeconds(5)
+
+    /**
+     * How many requests may be started per second, set it before the first request.
+     * The scheduler sends fewer if the API asks it to, see [RequestScheduler].
+     */
+    var requestsPerSecond = 10.0
+
+    /**
+     * Where results are remembered across runs. Names found in it aren't looked up again.
+     */
+    var cache: AvailabilityCache? = null
+
+    /**
+     * Where the results of the names that come up most often are kept in memory, looked at before [cache].
+     */
+    var memoryCache: TinyLfuCache? = null
+
+    /**
+     * What a lookup found out about a name.
+     */
+    enum class Status {
+        TAKEN,
+        FREE,
+        RATE_LIMITED,
+        FAILED;
+
+        companion object {
+            /**
+             * @return The status of a name, by the HTTP status of its profile lookup.
+             */
+            fun of(httpStatus: Int) = when (httpStatus) {
+                200 -> TAKEN
+                204, 404 -> FREE
+                429 -> RATE_LIMITED
+                else -> FAILED
             }
+        }
+    }
 
-            logger.log(Loglevel.DEBUG, "Minecraft API response: ${String(response)}")
+    // One client for all requests, so connections are kept alive and HTTP/2 requests share one
+    private val client by lazy {
+        HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(connectTimeout)
+            .build()
+    }
+
+    private val scheduler by lazy { RequestScheduler(client, requestsPerSecond) }
+
+    private fun request(path: String) = HttpRequest.newBuilder(URI("$baseUrl$path"))
+        .timeout(requestTimeout)
+        .header("User-Agent", "Mozilla/5.0")
 
-            return JSONObject(String(response)).has("name")
+    /**
+     * Looks up a single name, in the caches first. Only the status code is looked at, the response body is never read.
+     */
+    fun check(username: String): Status {
+        cached(username)?.let { taken ->
+            logger.log(Loglevel.DEBUG, "$username is cached as ${if (taken) "taken" else "free"}")
+            return if (taken) Status.TAKEN else Status.FREE
+        }
+        return try {
+            val response = scheduler.send(
+                request("/users/profiles/minecraft/$username").GET().build(),
+                HttpResponse.BodyHandlers.discarding()
+            )
+            logger.log(Loglevel.DEBUG, "Minecraft API response: ${response.statusCode()}")
+            Status.of(response.statusCode()).also {
+                when (it) {
+                    Status.TAKEN, Status.FREE -> remember(username, it == Status.TAKEN)
+                    else -> logger.log(Loglevel.ERROR, "Minecraft API returned ${response.statusCode()} for $username")
+                }
+            }
         } catch (e: Exception) {
-            logger.log(Loglevel.ERROR, "Minecraft API connection failed.")
-            val sw = StringWriter()
-            val pw = PrintWriter(sw)
-            e.printStackTrace(pw)
-            logger.log(Loglevel.ERROR, sw.toString())
-            return false
+            logError(e)
+            Status.FAILED
+        }
+    }
+
+    /**
+     * @return Whether [username] is taken. Names that couldn't be checked count as taken,
+     * so a name is never reported free without the API saying so.
+     */
+    fun usernameExists(username: String) = check(username) != Status.FREE
+
+    /**
+     * Looks up [usernames] with one request to the bulk profiles endpoint per [BULK_LIMIT] names.
+     * Names that aren't valid usernames are never sent, the endpoint rejects the whole request for them.
+     * @return The lowercase names of the ones that are taken.
+     * @throws IOException if a request fails or is still rate limited after retrying
+     */
+    fun takenUsernames(usernames: List<String>): Set<String> {
+        val valid = UsernameValidator.filterValid(usernames)
+        val requests = (valid.indices step BULK_LIMIT).map {
+            takenUsernamesAsync(valid.subList(it, minOf(it + BULK_LIMIT, valid.size)))
         }
+        return requests.flatMapTo(HashSet()) {
+            try {
+                it.join()
+            } catch (e: CompletionException) {
+                throw e.cause ?: e
+            }
+        }
+    }
+
+    /**
+     * Looks up at most [BULK_LIMIT] valid [usernames] with one request to the bulk profiles endpoint, without blocking.
+     * Cached names aren't sent, and the request is skipped if all of them are.
+     * A request that fails or is still rate limited after retrying completes exceptionally with an [IOException],
+     * since none of its names can be called free then.
+     * Cancelling the future keeps the request from being sent if it hasn't been yet.
+     * @return The lowercase names of the ones that are taken.
+     */
+    fun takenUsernamesAsync(usernames: List<String>): CompletableFuture<Set<String>> {
+        require(usernames.size <= BULK_LIMIT) { "At most $BULK_LIMIT names per request" }
+        val cachedTaken = HashSet<String>()
+        val unknown = ArrayList<String>(usernames.size)
+        for (name in usernames) {
+            when (cached(name)) {
+                true -> cachedTaken += name.lowercase()
+                false -> {}
+                null -> unknown += name
+            }
+        }
+        if (unknown.isEmpty()) return CompletableFuture.completedFuture(cachedTaken)
+
+        val request = request("/profiles/minecraft")
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(JSONArray(unknown).toString()))
+            .build()
+        val sent = scheduler.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+        val result: CompletableFuture<Set<String>> = sent.handle { response, e ->
+            when {
+                e is CancellationException -> throw e
+                e != null -> {
+                    logError(e)
+                    throw IOException("Minecraft API connection failed", e)
+                }
+                response.statusCode() != 200 -> {
+                    logger.log(Loglevel.ERROR, "Minecraft API returned ${response.statusCode()} for $unknown")
+                    throw IOException("Minecraft API returned ${response.statusCode()}")
+                }
+                else -> {
+                    logger.log(Loglevel.DEBUG, "Minecraft API response: ${response.body()}")
+
+                    val taken = takenNames(response.body())
+                    unknown.forEach { remember(it, it.lowercase() in taken) }
+                    taken.addAll(cachedTaken)
+                    taken
+                }
+            }
+        }
+        // Cancelling the result has to reach the request, which it doesn't through handle
+        result.whenComplete { _, e -> if (e is CancellationException) sent.cancel(true) }
+        return result
+    }
+
+    /**
+     * @return The lowercase names in a bulk profiles response. Only taken names are returned, with their real capitalization.
+     * @throws IOException if the response isn't a list of profiles
+     */
+    private fun takenNames(body: String): HashSet<String> = try {
+        val profiles = JSONArray(body)
+        (0..<profiles.length()).mapTo(HashSet()) { profiles.getJSONObject(it).getString("name").lowercase() }
+    } catch (e: JSONException) {
+        logger.log(Loglevel.ERROR, "Minecraft API returned an invalid response: $body")
+        throw IOException("Minecraft API returned an invalid response", e)
+    }
+
+    /**
+     * @return Whether [username] was taken by the caches, or `null` if neither has it.
+     * Names only found on disk are kept in memory too.
+     */
+    private fun cached(username: String): Boolean? {
+        memoryCache?.get(username)?.let { return it }
+        return cache?.get(username)?.also { memoryCache?.put(username, it) }
+    }
+
+    private fun remember(username: String, taken: Boolean) {
+        memoryCache?.put(username, taken)
+        cache?.put(username, taken)
+    }
+
+    private fun logError(e: Throwable) {
+        logger.log(Loglevel.ERROR, "Minecraft API connection failed.")
+        val sw = StringWriter()
+        val pw = PrintWriter(sw)
+        e.printStackTrace(pw)
+        logger.log(Loglevel.ERROR, sw.toString())
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,198 @@
+package pr0gramm3r101.randomnickgen.apis
+
+import pr0gramm3r101.logging.Loglevel
+import pr0gramm3r101.randomnickgen.logger
+import java.net.http.HttpClient
+import java.net.http.HttpRequest
+import java.net.http.HttpResponse
+import java.time.Duration
+import java.time.ZonedDateTime
+import java.time.format.DateTimeFormatter
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Sends requests through [client] no faster than the API allows.
+ *
+ * Requests are started by a token bucket that refills at up to [rate] tokens per second and holds up to [burst],
+ * and at most as many are sent at the same time as the concurrency window allows.
+ * Both adapt to the API: the window grows by one request per round trip while responses come back fast,
+ * and is halved on a 429 or when responses take more than twice as long as the fastest ones.
+ * A 429 also slows the refill down to three quarters, from where it grows back to [rate] slowly,
+ * and stops all requests for as long as its `Retry-After` says. The request is then sent again,
+ * up to [maxRetries] times.
+ */
+class RequestScheduler(
+    private val client: HttpClient,
+    private val rate: Double,
+    private val burst: Int = 1,
+    private val maxConcurrency: Int = 16,
+    private val maxRetries: Int = 8
+) {
+    init {
+        require(rate > 0) { "The rate must be positive" }
+    }
+
+    private val lock = ReentrantLock()
+    private val changed = lock.newCondition()
+
+    private var tokens = burst.toDouble()
+    private var refilled = System.nanoTime()
+    private var currentRate = rate
+
+    // Doubles so that the window can grow by fractions of a request
+    private var window = 1.0
+    private var active = 0
+    private var pausedUntil = refilled
+    private var lastDecrease = 0L
+
+    private var limitedInARow = 0
+
+    private var responses = 0
+    private var fastest = Long.MAX_VALUE
+    private var averageLatency = 0.0
+
+    /**
+     * The number of requests that may currently be sent at the same time.
+     */
+    val concurrency get() = lock.withLock { window.toInt() }
+
+    /**
+     * Sends [request] once the rate limit allows it, and again while it's answered with 429.
+     * @return The response, which is a 429 only if it still was after [maxRetries] retries
+     */
+    fun <T> send(request: HttpRequest, handler: HttpResponse.BodyHandler<T>): HttpResponse<T> =
+        send(request, handler) { false }!!
+
+    /**
+     * Sends [request] on a virtual thread, like [send]. Cancelling the future before the request is sent
+     * keeps it from being sent at all.
+     */
+    fun <T> sendAsync(request: HttpRequest, handler: HttpResponse.BodyHandler<T>): CompletableFuture<HttpResponse<T>> {
+        val result = CompletableFuture<HttpResponse<T>>()
+        Thread.ofVirtual().name("api-request").start {
+            try {
+                val response = send(request, handler) { result.isDone }
+                if (response != null) result.complete(response)
+            } catch (e: Throwable) {
+                result.completeExceptionally(e)
+            }
+        }
+        return result
+    }
+
+    private fun <T> send(
+        request: HttpRequest,
+        handler: HttpResponse.BodyHandler<T>,
+        cancelled: () -> Boolean
+    ): HttpResponse<T>? {
+        var retries = 0
+        while (true) {
+            acquire()
+            val start = System.nanoTime()
+            val response = try {
+                if (cancelled()) return null
+                client.send(request, handler)
+            } finally {
+                release()
+            }
+            if (response.statusCode() != 429 || retries++ == maxRetries) {
+                if (response.statusCode() != 429) onResponse(System.nanoTime() - start)
+                return response
+            }
+            onRateLimited(retryAfter(response))
+        }
+    }
+
+    /**
+     * Waits until a token and a place in the concurrency window are free, and takes them.
+     */
+    private fun acquire() = lock.withLock {
+        while (true) {
+            val now = System.nanoTime()
+            tokens = minOf(burst.toDouble(), tokens + (now - refilled) * currentRate / NANOS_PER_SECOND)
+            refilled = now
+
+            val wait = when {
+                pausedUntil - now > 0 -> pausedUntil - now
+                tokens < 1 -> ((1 - tokens) * NANOS_PER_SECOND / currentRate).toLong()
+                active >= window.toInt() -> -1L
+                else -> {
+                    tokens--
+                    active++
+                    return
+                }
+            }
+            if (wait < 0) changed.await() else changed.awaitNanos(wait)
+        }
+    }
+
+    private fun release() = lock.withLock {
+        active--
+        changed.signalAll()
+    }
+
+    private fun onResponse(latency: Long) = lock.withLock {
+        limitedInARow = 0
+        fastest = minOf(fastest, latency)
+        averageLatency = if (responses++ == 0) latency.toDouble() else averageLatency * 0.9 + latency * 0.1
+        // The first responses include setting up the connection, so they say nothing about the load
+        if (responses > WARMUP && window >= 2 && averageLatency > fastest * 2) {
+            decrease("responses are slowing down")
+        } else {
+            // Additive increase: one more request per window's worth of responses,
+            // and the refill grows by a fiftieth of the configured rate per second
+            window = minOf(maxConcurrency.toDouble(), window + 1 / window)
+            currentRate = minOf(rate, currentRate + rate / 50 / currentRate)
+        }
+        changed.signalAll()
+    }
+
+    private fun onRateLimited(retryAfter: Duration?) = lock.withLock {
+        val now = System.nanoTime()
+        // Without a Retry-After, back off exponentially
+        val pause = retryAfter?.toNanos() ?: minOf(MAX_PAUSE, MIN_PAUSE shl minOf(limitedInARow, 6))
+        limitedInARow++
+        pausedUntil = maxOf(pausedUntil, now + pause)
+        tokens = 0.0
+        currentRate = maxOf(rate / 64, currentRate * 0.75)
+        decrease("rate limited for ${pause / 1_000_000} ms")
+        changed.signalAll()
+    }
+
+    /**
+     * Multiplicative decrease, at most once per round trip so one slow burst doesn't shrink the window to nothing.
+     */
+    private fun decrease(reason: String) {
+        val now = System.nanoTime()
+        if (now - lastDecrease < averageLatency) return
+        lastDecrease = now
+        window = maxOf(1.0, window / 2)
+        logger.log(
+            Loglevel.WARN,
+            "Minecraft API $reason, sending ${window.toInt()} requests at a time, %.1f per second".format(currentRate)
+        )
+    }
+
+    private companion object {
+        const val NANOS_PER_SECOND = 1_000_000_000.0
+        const val WARMUP = 8
+        val MIN_PAUSE = Duration.ofSeconds(1).toNanos()
+        val MAX_PAUSE = Duration.ofMinutes(1).toNanos()
+
+        /**
+         * @return How long the server asked to wait, from a `Retry-After` with either seconds or an HTTP date.
+         */
+        fun retryAfter(response: HttpResponse<*>): Duration? {
+            val value = response.headers().firstValue("Retry-After").orElse(null)?.trim() ?: return null
+            value.toLongOrNull()?.let { return Duration.ofSeconds(maxOf(0, it)) }
+            return try {
+                val date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME)
+                Duration.between(ZonedDateTime.now(date.zone), date).takeIf { !it.isNegative } ?: Duration.ZERO
+            } catch (_: Exception) {
+                null
+            }
+        }
+    }
+}
@@ -1,24 +1,37 @@
 package pr0gramm3r101.randomnickgen.apis
 
-object WordAPI {
-    private val words = run {
-        val list = mutableListOf<String>()
-        var currentWord = ""
-        this::class.java.getResourceAsStream("/words.txt")!!.bufferedReader().use {
-            while (true) {
-                when (val char = it.read()) {
-                    ' '.code -> {
-                        list += currentWord
-                        currentWord = ""
-                    }
+import pr0gramm3r101.randomnickgen.corpus.Corpus
+import pr0gramm3r101.randomnickgen.corpus.WordSource
+import java.util.concurrent.ThreadLocalRandom
 
-                    -1 -> return@use
-                    else -> currentWord += char.toChar()
-                }
-            }
-        }
-        list
+object WordAPI {
+    /**
+     * The built-in word corpus.
+     */
+    val corpus by lazy {
+        Corpus.resource("/words.bin")
+            ?: this::class.java.getResourceAsStream("/words.txt")!!.use { Corpus.compile(it) }
     }
 
-    fun randomWord() = words.random()
-}
\ No newline at end of file
+    /**
+     * Where words are taken from. Uses the built-in [corpus] if not set.
+     */
+    var source: WordSource? = null
+
+    /**
+     * The words in use: [source] if set, the built-in [corpus] otherwise.
+     */
+    val words get() = source ?: corpus
+
+    /**
+     * @return The number of words between [minLength] and [maxLength] characters long.
+     */
+    fun count(minLength: Int = 1, maxLength: Int = Int.MAX_VALUE) = words.count(minLength, maxLength)
+
+    /**
+     * @return A random word between [minLength] and [maxLength] characters long,
+     * or `null` if there is no such word.
+     */
+    fun randomWord(minLength: Int = 1, maxLength: Int = Int.MAX_VALUE) =
+        words.randomWord(ThreadLocalRandom.current(), minLength, maxLength)
+}
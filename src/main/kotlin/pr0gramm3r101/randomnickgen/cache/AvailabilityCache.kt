@@ -0,0 +1,202 @@
+package pr0gramm3r101.randomnickgen.cache
+
+import pr0gramm3r101.randomnickgen.unique.PackedName
+import java.io.Closeable
+import java.io.IOException
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.channels.FileLock
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.time.Duration
+import java.time.Instant
+
+/**
+ * Remembers which names were found taken or free, across runs, in a memory-mapped file.
+ *
+ * The file is one open-addressing hash table of lowercase [PackedName]s, so opening it reads nothing but the header
+ * and a lookup touches a slot or two of the mapping. Every entry has the time its name was checked:
+ * taken names are trusted for [takenTtl] and free ones for [freeTtl], since free names get taken far more often
+ * than taken ones get free. When the table gets 3/4 full, expired entries are dropped,
+ * and it doubles if it's still more than half full. Names that don't [fit][PackedName.fits] are never cached.
+ *
+ * Only one process can have the file open, see [open]. Changes are written back by the OS
+ * even if the cache isn't [closed][close].
+ *
+ * Layout (big-endian):
+ * ```
+ * int                          magic ("RNGC")
+ * int                          version
+ * int                          slot count, a power of two
+ * int                          entry count
+ * (long, long, long)[slots]    packed name, or (0, 0) for an empty slot, and the check time in seconds shl 1 or 1 if taken
+ * ```
+ */
+class AvailabilityCache private constructor(
+    private val channel: FileChannel,
+    private val lock: FileLock,
+    var takenTtl: Duration,
+    var freeTtl: Duration
+) : Closeable {
+    private lateinit var buffer: MappedByteBuffer
+    private var mask = 0
+
+    /**
+     * The number of names in the cache, including expired ones.
+     */
+    var size = 0
+        private set
+
+    init {
+        if (channel.size() == 0L) {
+            map(INITIAL_SLOTS)
+            buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, INITIAL_SLOTS)
+        } else {
+            if (channel.size() < HEADER_SIZE) throw IOException("Not an availability cache")
+            map(((channel.size() - HEADER_SIZE) / SLOT_SIZE).toInt())
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != mask + 1) {
+                throw IOException("Not an availability cache")
+            }
+            size = buffer.getInt(12)
+        }
+    }
+
+    private fun map(slots: Int) {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + slots.toLong() * SLOT_SIZE)
+        mask = slots - 1
+    }
+
+    /**
+     * @return Whether [name] was taken when it was last checked, or `null` if it wasn't checked
+     * or the result has expired.
+     */
+    @Synchronized
+    fun get(name: CharSequence, now: Instant = Instant.now()): Boolean? {
+        if (!PackedName.fits(name)) return null
+        val position = find(PackedName.lowercase(PackedName.high(name)), PackedName.lowercase(PackedName.low(name)))
+        if (buffer.getLong(position) == EMPTY) return null
+        return buffer.getLong(position + 16).takeIf { !isExpired(it, now.epochSecond) }?.let { it and 1L == 1L }
+    }
+
+    /**
+     * Remembers that [name] was found [taken] at [now].
+     */
+    @Synchronized
+    fun put(name: CharSequence, taken: Boolean, now: Instant = Instant.now()) {
+        if (!PackedName.fits(name)) return
+        val high = PackedName.lowercase(PackedName.high(name))
+        val low = PackedName.lowercase(PackedName.low(name))
+        val position = find(high, low)
+        buffer.putLong(position + 16, (now.epochSecond shl 1) or (if (taken) 1L else 0L))
+        if (buffer.getLong(position) != EMPTY) return
+        buffer.putLong(position, high).putLong(position + 8, low)
+        buffer.putInt(12, ++size)
+        if (size > (mask + 1) / 4 * 3) rebuild(now.epochSecond)
+    }
+
+    private fun isExpired(value: Long, now: Long): Boolean {
+        val ttl = if (value and 1L == 1L) takenTtl else freeTtl
+        return now - (value ushr 1) > ttl.seconds
+    }
+
+    // The position of the slot holding the name, or of the empty slot where it would go
+    private fun find(high: Long, low: Long): Int {
+        var slot = PackedName.hash(high, low).toInt() and mask
+        while (true) {
+            val position = HEADER_SIZE + slot * SLOT_SIZE
+            val slotHigh = buffer.getLong(position)
+            if (slotHigh == EMPTY || (slotHigh == high && buffer.getLong(position + 8) == low)) return position
+            slot = (slot + 1) and mask
+        }
+    }
+
+    /**
+     * Drops expired entries and grows the table if it's still more than half full.
+     */
+    private fun rebuild(now: Long) {
+        val entries = LongArray(size * 3)
+        var live = 0
+        for (slot in 0..mask) {
+            val position = HEADER_SIZE + slot * SLOT_SIZE
+            val high = buffer.getLong(position)
+            val value = buffer.getLong(position + 16)
+            if (high == EMPTY || isExpired(value, now)) continue
+            entries[live * 3] = high
+            entries[live * 3 + 1] = buffer.getLong(position + 8)
+            entries[live * 3 + 2] = value
+            live++
+        }
+
+        // Growing the mapping grows the file, the old slots are cleared and everything is inserted again
+        val slots = if (live > (mask + 1) / 2) (mask + 1) * 2 else mask + 1
+        for (position in HEADER_SIZE..<HEADER_SIZE + (mask + 1) * SLOT_SIZE step Long.SIZE_BYTES) {
+            buffer.putLong(position, 0L)
+        }
+        if (slots != mask + 1) {
+            map(slots)
+            buffer.putInt(8, slots)
+        }
+        for (i in 0..<live) {
+            val position = find(entries[i * 3], entries[i * 3 + 1])
+            buffer.putLong(position, entries[i * 3])
+                .putLong(position + 8, entries[i * 3 + 1])
+                .putLong(position + 16, entries[i * 3 + 2])
+        }
+        size = live
+        buffer.putInt(12, size)
+    }
+
+    /**
+     * Writes the cache to disk and closes the file.
+     */
+    @Synchronized
+    override fun close() {
+        buffer.force()
+        lock.release()
+        channel.close()
+    }
+
+    companion object {
+        private const val MAGIC = 0x524E4743 // "RNGC"
+        private const val VERSION = 1
+        private const val HEADER_SIZE = 4 * Int.SIZE_BYTES
+        private const val SLOT_SIZE = 3 * Long.SIZE_BYTES
+        private const val INITIAL_SLOTS = 1 shl 14
+        private const val EMPTY = 0L
+
+        /**
+         * Taken names are trusted for this long by default.
+         */
+        val DEFAULT_TAKEN_TTL: Duration = Duration.ofDays(30)
+
+        /**
+         * Free names are trusted for this long by default.
+         */
+        val DEFAULT_FREE_TTL: Duration = Duration.ofHours(1)
+
+        /**
+         * Opens a cache file, creating it if it doesn't exist.
+         * @return The cache, or `null` if another process has it open
+         * @throws IOException if the file isn't an availability cache or an I/O error occurs
+         */
+        fun open(
+            path: Path,
+            takenTtl: Duration = DEFAULT_TAKEN_TTL,
+            freeTtl: Duration = DEFAULT_FREE_TTL
+        ): AvailabilityCache? {
+            val channel = FileChannel.open(
+                path,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE
+            )
+            try {
+                val lock = channel.tryLock() ?: return null.also { channel.close() }
+                return AvailabilityCache(channel, lock, takenTtl, freeTtl)
+            } catch (e: Exception) {
+                channel.close()
+                throw e
+            }
+        }
+    }
+}
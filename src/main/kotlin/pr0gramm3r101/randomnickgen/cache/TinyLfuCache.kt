@@ -0,0 +1,259 @@
+package pr0gramm3r101.randomnickgen.cache
+
+import pr0gramm3r101.randomnickgen.unique.PackedName
+import pr0gramm3r101.randomnickgen.unique.PackedNameMap
+import java.time.Duration
+import java.time.Instant
+
+/**
+ * A bounded in-memory cache of check results that keeps the names that come up most often, ignoring case.
+ *
+ * Eviction follows W-TinyLFU: new names go into a small LRU window, and a name leaving the window only gets into
+ * the main segmented LRU if it has come up more often than the name that would have to make room for it.
+ * How often names come up is estimated by a count-min sketch that is halved every `10 * capacity` lookups,
+ * so names that stop coming up are forgotten. Names hit again in the main part move from its probation segment
+ * to its protected one (4/5 of it), so a burst of names seen once can't push the common ones out.
+ *
+ * Entries live in flat arrays linked into the three lists by index, so there are no objects per name.
+ * Results expire like in [AvailabilityCache]. Names that don't [fit][PackedName.fits] are never cached.
+ * [hits], [misses] and [evictions] count what the cache did, to help size it.
+ */
+class TinyLfuCache(
+    val capacity: Int,
+    var takenTtl: Duration = AvailabilityCache.DEFAULT_TAKEN_TTL,
+    var freeTtl: Duration = AvailabilityCache.DEFAULT_FREE_TTL
+) {
+    init {
+        require(capacity > 0) { "Capacity $capacity out of range" }
+    }
+
+    private val windowCapacity = maxOf(1, capacity / 100)
+    private val protectedCapacity = (capacity - windowCapacity) * 4 / 5
+
+    // A new name is added before one is evicted, so there's room for one more entry,
+    // and the three lists have their heads after the last entry
+    private val highs = LongArray(capacity + 1)
+    private val lows = LongArray(capacity + 1)
+    private val values = LongArray(capacity + 1)
+    private val previous = IntArray(capacity + 4)
+    private val next = IntArray(capacity + 4)
+    private val segments = ByteArray(capacity + 1)
+    private val counts = IntArray(3)
+    private var used = 0
+    private val free = IntArray(capacity + 1)
+    private var freeCount = 0
+
+    private val index = PackedNameMap(capacity)
+    private val sketch = FrequencySketch(capacity)
+
+    /**
+     * The number of lookups that found a result.
+     */
+    var hits = 0L
+        private set
+
+    /**
+     * The number of lookups that didn't find one, or found an expired one.
+     */
+    var misses = 0L
+        private set
+
+    /**
+     * The number of names dropped to make room for others, not counting expired ones.
+     */
+    var evictions = 0L
+        private set
+
+    /**
+     * The number of names in the cache.
+     */
+    val size get() = index.size
+
+    /**
+     * The share of lookups that found a result.
+     */
+    val hitRate get() = if (hits + misses == 0L) 0.0 else hits.toDouble() / (hits + misses)
+
+    init {
+        for (segment in 0..<3) {
+            previous[head(segment)] = head(segment)
+            next[head(segment)] = head(segment)
+        }
+    }
+
+    /**
+     * @return Whether [name] was taken when it was last checked, or `null` if it isn't cached or the result has expired.
+     */
+    @Synchronized
+    fun get(name: CharSequence, now: Instant = Instant.now()): Boolean? {
+        if (!PackedName.fits(name)) return null
+        val high = PackedName.lowercase(PackedName.high(name))
+        val low = PackedName.lowercase(PackedName.low(name))
+        sketch.increment(high, low)
+        val entry = index.get(high, low, -1L).toInt()
+        if (entry < 0) {
+            misses++
+            return null
+        }
+        if (isExpired(values[entry], now.epochSecond)) {
+            remove(entry)
+            misses++
+            return null
+        }
+        hits++
+        touch(entry)
+        return values[entry] and 1L == 1L
+    }
+
+    /**
+     * Remembers that [name] was found [taken] at [now].
+     */
+    @Synchronized
+    fun put(name: CharSequence, taken: Boolean, now: Instant = Instant.now()) {
+        if (!PackedName.fits(name)) return
+        val high = PackedName.lowercase(PackedName.high(name))
+        val low = PackedName.lowercase(PackedName.low(name))
+        val value = (now.epochSecond shl 1) or (if (taken) 1L else 0L)
+        val existing = index.get(high, low, -1L).toInt()
+        if (existing >= 0) {
+            values[existing] = value
+            touch(existing)
+            return
+        }
+
+        val entry = if (freeCount > 0) free[--freeCount] else used++
+        highs[entry] = high
+        lows[entry] = low
+        values[entry] = value
+        index.put(high, low, entry.toLong())
+        link(entry, WINDOW)
+        if (counts[WINDOW] > windowCapacity) admit(next[head(WINDOW)])
+    }
+
+    /**
+     * Moves [candidate] from the window to probation, and if the cache is over capacity evicts either it
+     * or the least recently used name of the main part, whichever comes up less often.
+     */
+    private fun admit(candidate: Int) {
+        unlink(candidate)
+        link(candidate, PROBATION)
+        if (index.size <= capacity) return
+
+        evictions++
+        var victim = next[head(PROBATION)]
+        if (victim == candidate) {
+            // The main part is all protected, or too small to hold anything but the candidate
+            if (counts[PROTECTED] == 0) return remove(candidate)
+            victim = next[head(PROTECTED)]
+        }
+        if (sketch.frequency(highs[candidate], lows[candidate]) > sketch.frequency(highs[victim], lows[victim])) {
+            remove(victim)
+        } else {
+            remove(candidate)
+        }
+    }
+
+    // Moves an entry that was hit to the most recently used end, or from probation to protected
+    private fun touch(entry: Int) {
+        val segment = segments[entry].toInt()
+        unlink(entry)
+        if (segment == PROBATION) {
+            link(entry, PROTECTED)
+            if (counts[PROTECTED] > protectedCapacity) {
+                val demoted = next[head(PROTECTED)]
+                unlink(demoted)
+                link(demoted, PROBATION)
+            }
+        } else {
+            link(entry, segment)
+        }
+    }
+
+    private fun remove(entry: Int) {
+        unlink(entry)
+        index.remove(highs[entry], lows[entry])
+        free[freeCount++] = entry
+    }
+
+    private fun isExpired(value: Long, now: Long): Boolean {
+        val ttl = if (value and 1L == 1L) takenTtl else freeTtl
+        return now - (value ushr 1) > ttl.seconds
+    }
+
+    private fun head(segment: Int) = capacity + 1 + segment
+
+    // Adds an entry at the most recently used end of a list
+    private fun link(entry: Int, segment: Int) {
+        val head = head(segment)
+        val last = previous[head]
+        next[last] = entry
+        previous[entry] = last
+        next[entry] = head
+        previous[head] = entry
+        segments[entry] = segment.toByte()
+        counts[segment]++
+    }
+
+    private fun unlink(entry: Int) {
+        next[previous[entry]] = next[entry]
+        previous[next[entry]] = previous[entry]
+        counts[segments[entry].toInt()]--
+    }
+
+    override fun toString() = "$size/$capacity names, $hits hits, $misses misses (%.1f%%), $evictions evictions"
+        .format(hitRate * 100)
+
+    /**
+     * A count-min sketch of 4-bit counters, 16 to a long, with 4 counters per name in different longs.
+     * Counters stop at 15 and all of them are halved after `10 * capacity` increments.
+     */
+    private class FrequencySketch(capacity: Int) {
+        private val table = LongArray(Integer.highestOneBit(maxOf(capacity, 8) - 1) shl 1)
+        private val mask = table.size - 1
+        private val sampleSize = 10L * capacity
+        private var additions = 0L
+
+        fun increment(high: Long, low: Long) {
+            val hash = PackedName.hash(high, low)
+            var added = false
+            for (row in 0..<ROWS) {
+                val slot = slot(hash, row)
+                val shift = shift(hash, row)
+                if ((table[slot] ushr shift) and 15L < 15L) {
+                    table[slot] += 1L shl shift
+                    added = true
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                for (i in table.indices) table[i] = (table[i] ushr 1) and HALF_MASK
+                additions /= 2
+            }
+        }
+
+        fun frequency(high: Long, low: Long): Int {
+            val hash = PackedName.hash(high, low)
+            var frequency = 15
+            for (row in 0..<ROWS) {
+                frequency = minOf(frequency, ((table[slot(hash, row)] ushr shift(hash, row)) and 15L).toInt())
+            }
+            return frequency
+        }
+
+        // The long holding a name's counter in a row, and the counter's bit offset in it
+        private fun slot(hash: Long, row: Int) = (((hash + SEEDS[row]) * SEEDS[row]) ushr 32).toInt() and mask
+
+        private fun shift(hash: Long, row: Int) = ((((hash + SEEDS[row]) * SEEDS[row]) ushr 8).toInt() and 15) shl 2
+
+        private companion object {
+            const val ROWS = 4
+            const val HALF_MASK = 0x7777777777777777L
+            val SEEDS = longArrayOf(-0x3c6ef372fe94f82bL, -0x61c8864680b583ebL, 0x2545f4914f6cdd1dL, 0x5851f42d4c957f2dL)
+        }
+    }
+
+    private companion object {
+        const val WINDOW = 0
+        const val PROBATION = 1
+        const val PROTECTED = 2
+    }
+}
@@ -0,0 +1,64 @@
+package pr0gramm3r101.randomnickgen.corpus
+
+import java.util.random.RandomGenerator
+
+/**
+ * Draws indices with probability proportional to their weights in O(1), using Vose's alias method.
+ *
+ * Every index owns an equal-width column that holds its own weight plus, in the remaining space,
+ * part of the weight of one "alias" index, so a draw is one column pick and one comparison.
+ */
+class AliasTable(weights: DoubleArray, from: Int = 0, to: Int = weights.size) {
+    /**
+     * The number of indices.
+     */
+    val size = to - from
+
+    /**
+     * The sum of all weights.
+     */
+    val totalWeight: Double
+
+    private val probability = DoubleArray(size)
+    private val alias = IntArray(size)
+
+    init {
+        var total = 0.0
+        for (i in from..<to) {
+            require(weights[i] >= 0 && weights[i].isFinite()) { "Invalid weight: ${weights[i]}" }
+            total += weights[i]
+        }
+        totalWeight = total
+
+        // Scale the weights so the average column is exactly full, then pair every underfull
+        // column with an overfull one that tops it up
+        val scaled = DoubleArray(size) { if (total > 0) weights[from + it] * size / total else 1.0 }
+        val small = IntArray(size)
+        val large = IntArray(size)
+        var smallCount = 0
+        var largeCount = 0
+        for (i in 0..<size) {
+            if (scaled[i] < 1) small[smallCount++] = i else large[largeCount++] = i
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            val less = small[--smallCount]
+            val more = large[--largeCount]
+            probability[less] = scaled[less]
+            alias[less] = more
+            scaled[more] = scaled[more] + scaled[less] - 1
+            if (scaled[more] < 1) small[smallCount++] = more else large[largeCount++] = more
+        }
+        // Whatever is left is full up to rounding errors
+        while (largeCount > 0) probability[large[--largeCount]] = 1.0
+        while (smallCount > 0) probability[small[--smallCount]] = 1.0
+    }
+
+    /**
+     * @return A random index between 0 and [size] (exclusive), relative to the start of the weighted range.
+     */
+    fun next(random: RandomGenerator): Int {
+        val column = random.nextDouble() * size
+        val i = column.toInt().coerceAtMost(size - 1)
+        return if (column - i < probability[i]) i else alias[i]
+    }
+}
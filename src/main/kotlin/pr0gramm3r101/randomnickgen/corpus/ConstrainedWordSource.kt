@@ -0,0 +1,95 @@
+package pr0gramm3r101.randomnickgen.corpus
+
+import java.util.random.RandomGenerator
+
+/**
+ * The words of an [IndexedWordSource] that start with [prefix] and contain none of [excludedChars].
+ *
+ * The words of every length are sorted alphabetically, so the words starting with [prefix] are found with
+ * one binary search per length, comparing at most `prefix.length` characters per step.
+ * Only those words are checked for [excludedChars], and the indices of the ones that match are kept
+ * in one array, sorted by length. So counting matching words is exact and a subtraction,
+ * and sampling picks from the matching words only.
+ * The matching words are numbered in the same order as in [words], so they can be enumerated too.
+ */
+class ConstrainedWordSource(
+    private val words: IndexedWordSource,
+    val prefix: String,
+    val excludedChars: String = ""
+) : IndexedWordSource {
+    override val maxLength = words.maxLength
+
+    // Indices of the matching words, and where every length starts among them
+    private val matches: IntArray
+    private val lengthStarts = IntArray(maxLength + 2)
+
+    init {
+        val excluded = BooleanArray(128)
+        for (char in excludedChars) if (char.code < 128) excluded[char.code] = true
+        val word = CharArray(maxLength)
+        var result = IntArray(64)
+        var count = 0
+        for (length in 1..maxLength) {
+            lengthStarts[length] = count
+            if (length < prefix.length) continue
+            var i = firstAtLeast(words.lengthStart(length), words.lengthEnd(length), word)
+            val end = words.lengthEnd(length)
+            while (i < end) {
+                words.copyWord(i, word, 0)
+                if (compareToPrefix(word) != 0) break
+                if ((0..<length).none { word[it].code < 128 && excluded[word[it].code] }) {
+                    if (count == result.size) result = result.copyOf(count * 2)
+                    result[count++] = i
+                }
+                i++
+            }
+        }
+        lengthStarts[maxLength + 1] = count
+        matches = result.copyOf(count)
+    }
+
+    // The first word in from..<to that isn't before the prefix
+    private fun firstAtLeast(from: Int, to: Int, word: CharArray): Int {
+        var low = from
+        var high = to
+        while (low < high) {
+            val middle = (low + high) ushr 1
+            words.copyWord(middle, word, 0)
+            if (compareToPrefix(word) < 0) low = middle + 1 else high = middle
+        }
+        return low
+    }
+
+    // Compares the start of a word with the prefix, the word being at least as long
+    private fun compareToPrefix(word: CharArray): Int {
+        for (i in prefix.indices) {
+            if (word[i] != prefix[i]) return word[i] - prefix[i]
+        }
+        return 0
+    }
+
+    override val size get() = matches.size
+
+    override fun lengthStart(length: Int) = lengthStarts[length.coerceIn(0, maxLength + 1)]
+
+    override fun lengthEnd(length: Int) = lengthStarts[(length.coerceAtMost(maxLength) + 1).coerceAtLeast(0)]
+
+    override fun copyWord(index: Int, destination: CharArray, offset: Int) =
+        words.copyWord(matches[index], destination, offset)
+
+    override fun count(minLength: Int, maxLength: Int) =
+        if (minLength > maxLength) 0L else (lengthEnd(maxLength) - lengthStart(minLength)).coerceAtLeast(0).toLong()
+
+    override fun randomWord(
+        random: RandomGenerator,
+        minLength: Int,
+        maxLength: Int,
+        destination: CharArray,
+        offset: Int
+    ): Int {
+        val start = lengthStart(minLength)
+        val end = lengthEnd(maxLength)
+        if (minLength > maxLength || start >= end) return -1
+        return words.copyWord(matches[random.nextInt(start, end)], destination, offset)
+    }
+}
@@ -0,0 +1,232 @@
+package pr0gramm3r101.randomnickgen.corpus
+
+import java.io.IOException
+import java.io.InputStream
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.Arrays
+import java.util.random.RandomGenerator
+
+/**
+ * A compiled word list, read through a read-only [ByteBuffer] view.
+ *
+ * Words are stored as packed ASCII bytes with an offset table in front of them,
+ * so picking a word is two reads from the offset table and no [String] is created
+ * until the word is actually requested.
+ * Words are sorted by length and then alphabetically, so all words within a length range form one contiguous
+ * index range (see [lengthStart]), and a word can be looked up with a binary search (see [indexOf]).
+ *
+ * Layout (big-endian):
+ * ```
+ * int              magic ("RNGW")
+ * int              version
+ * int              word count
+ * int              max word length (L)
+ * int[L + 2]       index of the first word of each length 0..L+1
+ * int[count + 1]   word offsets, relative to the start of the data section
+ * byte[]           word data
+ * ```
+ */
+class Corpus private constructor(buffer: ByteBuffer) : IndexedWordSource {
+    private val buffer = buffer.asReadOnlyBuffer().order(ByteOrder.BIG_ENDIAN)
+
+    /**
+     * The number of words in the corpus.
+     */
+    override val size: Int
+
+    /**
+     * The length of the longest word in the corpus.
+     */
+    override val maxLength: Int
+
+    private val bucketsStart = HEADER_SIZE
+    private val offsetsStart: Int
+    private val dataStart: Int
+
+    init {
+        if (this.buffer.limit() < HEADER_SIZE || this.buffer.getInt(0) != MAGIC) {
+            throw IOException("Not a compiled word corpus")
+        }
+        val version = this.buffer.getInt(4)
+        if (version != VERSION) {
+            throw IOException("Unsupported word corpus version $version")
+        }
+        size = this.buffer.getInt(8)
+        maxLength = this.buffer.getInt(12)
+        offsetsStart = bucketsStart + (maxLength + 2) * Int.SIZE_BYTES
+        dataStart = offsetsStart + (size + 1) * Int.SIZE_BYTES
+        if (size < 0 || maxLength < 0 || dataStart + offset(size) > this.buffer.limit()) {
+            throw IOException("Truncated word corpus")
+        }
+    }
+
+    private fun offset(index: Int) = buffer.getInt(offsetsStart + index * Int.SIZE_BYTES)
+
+    override fun lengthStart(length: Int) = when {
+        length <= 0 -> 0
+        length > maxLength -> size
+        else -> buffer.getInt(bucketsStart + length * Int.SIZE_BYTES)
+    }
+
+    override fun count(minLength: Int, maxLength: Int) =
+        if (minLength > maxLength) 0L else (lengthEnd(maxLength) - lengthStart(minLength)).toLong()
+
+    override fun lengthEnd(length: Int) = if (length >= maxLength) size else lengthStart(length + 1)
+
+    override fun randomWord(
+        random: RandomGenerator,
+        minLength: Int,
+        maxLength: Int,
+        destination: CharArray,
+        offset: Int
+    ): Int {
+        val start = lengthStart(minLength)
+        val end = lengthEnd(maxLength)
+        if (minLength > maxLength || start >= end) return -1
+        return copyWord(random.nextInt(start, end), destination, offset)
+    }
+
+    /**
+     * @return The length of the word at [index].
+     */
+    fun length(index: Int) = offset(index + 1) - offset(index)
+
+    /**
+     * @return The word at [index].
+     */
+    fun word(index: Int): String {
+        val chars = CharArray(length(index))
+        copyWord(index, chars, 0)
+        return String(chars)
+    }
+
+    /**
+     * @return The index of the word in [chars] from [offset] to [offset] + [length], or -1 if it's not in the corpus.
+     */
+    fun indexOf(chars: CharArray, offset: Int, length: Int): Int {
+        var low = lengthStart(length)
+        var high = lengthEnd(length) - 1
+        while (low <= high) {
+            val middle = (low + high) ushr 1
+            val start = dataStart + offset(middle)
+            var result = 0
+            for (i in 0..<length) {
+                result = (buffer.get(start + i).toInt() and 0xFF) - chars[offset + i].code
+                if (result != 0) break
+            }
+            when {
+                result < 0 -> low = middle + 1
+                result > 0 -> high = middle - 1
+                else -> return middle
+            }
+        }
+        return -1
+    }
+
+    operator fun contains(word: String) = indexOf(word.toCharArray(), 0, word.length) >= 0
+
+    override fun copyWord(index: Int, destination: CharArray, offset: Int): Int {
+        val start = dataStart + offset(index)
+        val length = length(index)
+        for (i in 0..<length) {
+            destination[offset + i] = (buffer.get(start + i).toInt() and 0xFF).toChar()
+        }
+        return length
+    }
+
+    companion object {
+        const val MAGIC = 0x524E4757 // "RNGW"
+        const val VERSION = 2
+        private const val HEADER_SIZE = 4 * Int.SIZE_BYTES
+
+        /**
+         * Opens a compiled corpus from its serialized form.
+         * @throws IOException if the buffer doesn't contain a compiled corpus
+         */
+        fun open(buffer: ByteBuffer) = Corpus(buffer)
+
+        /**
+         * Memory-maps a compiled corpus file.
+         * @throws IOException if an I/O error occurs
+         */
+        fun map(path: Path): Corpus = FileChannel.open(path, StandardOpenOption.READ).use {
+            Corpus(it.map(FileChannel.MapMode.READ_ONLY, 0, it.size()))
+        }
+
+        /**
+         * Opens a compiled corpus from the classpath, or `null` if there is no such resource.
+         * Corpora packaged as plain files are memory-mapped, ones inside a JAR are read into a single buffer.
+         */
+        fun resource(name: String): Corpus? {
+            val url = Corpus::class.java.getResource(name) ?: return null
+            if (url.protocol == "file") {
+                return map(Path.of(url.toURI()))
+            }
+            return url.openStream().use { open(ByteBuffer.wrap(it.readAllBytes())) }
+        }
+
+        /**
+         * Compiles a whitespace-separated word list in a single pass over its bytes.
+         */
+        fun compile(input: InputStream) = compile(input.readAllBytes())
+
+        /**
+         * Compiles a whitespace-separated word list in a single pass over its bytes, lowercasing the words.
+         * The [text] array is overwritten with the packed word data.
+         */
+        fun compile(text: ByteArray): Corpus {
+            // Word data never exceeds the input, so the words are packed in place
+            var offsets = IntArray(1024)
+            var count = 0
+            var length = 0
+            var wordStart = 0
+            var maxLength = 0
+            for (i in 0..text.size) {
+                val byte = if (i < text.size) text[i].toInt() else ' '.code
+                if (byte == ' '.code || byte == '\n'.code || byte == '\r'.code || byte == '\t'.code) {
+                    if (i > wordStart) {
+                        if (count + 1 == offsets.size) offsets = offsets.copyOf(offsets.size * 2)
+                        count++
+                        offsets[count] = length
+                        maxLength = maxOf(maxLength, offsets[count] - offsets[count - 1])
+                    }
+                    wordStart = i + 1
+                } else {
+                    text[length++] = (if (byte in 'A'.code..'Z'.code) byte + ('a' - 'A') else byte).toByte()
+                }
+            }
+
+            // Counting sort by length, then every length sorted alphabetically
+            val buckets = IntArray(maxLength + 2)
+            for (i in 0..<count) buckets[offsets[i + 1] - offsets[i] + 1]++
+            for (i in 1..<buckets.size) buckets[i] += buckets[i - 1]
+            val order = IntArray(count)
+            val next = buckets.copyOf()
+            for (i in 0..<count) order[next[offsets[i + 1] - offsets[i]]++] = i
+            for (length in 1..maxLength) {
+                val sorted = order.copyOfRange(buckets[length], buckets[length + 1]).sortedWith { a, b ->
+                    Arrays.compareUnsigned(text, offsets[a], offsets[a] + length, text, offsets[b], offsets[b] + length)
+                }
+                sorted.forEachIndexed { i, it -> order[buckets[length] + i] = it }
+            }
+
+            val buffer = ByteBuffer.allocate(
+                HEADER_SIZE + (buckets.size + count + 1) * Int.SIZE_BYTES + length
+            )
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(maxLength)
+            buckets.forEach { buffer.putInt(it) }
+            var offset = 0
+            buffer.putInt(offset)
+            for (i in order) {
+                offset += offsets[i + 1] - offsets[i]
+                buffer.putInt(offset)
+            }
+            for (i in order) buffer.put(text, offsets[i], offsets[i + 1] - offsets[i])
+            return Corpus(buffer.flip())
+        }
+    }
+}
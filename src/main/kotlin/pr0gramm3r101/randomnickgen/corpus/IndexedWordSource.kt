@@ -0,0 +1,29 @@
+package pr0gramm3r101.randomnickgen.corpus
+
+/**
+ * A [WordSource] whose words are numbered, sorted by length and then alphabetically,
+ * so all the words within a length range form one contiguous index range.
+ */
+interface IndexedWordSource : WordSource {
+    /**
+     * The number of words.
+     */
+    val size: Int
+
+    /**
+     * @return The index of the first word that is at least [length] characters long,
+     * or [size] if there is no such word.
+     */
+    fun lengthStart(length: Int): Int
+
+    /**
+     * @return The index after the last word that is at most [length] characters long.
+     */
+    fun lengthEnd(length: Int): Int
+
+    /**
+     * Copies the word at [index] into [destination] at [offset].
+     * @return The length of the word.
+     */
+    fun copyWord(index: Int, destination: CharArray, offset: Int): Int
+}
@@ -0,0 +1,34 @@
+package pr0gramm3r101.randomnickgen.corpus
+
+import java.nio.ByteOrder
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * A read-only memory mapping of a file of any size.
+ * A single [MappedByteBuffer] can't exceed 2 GiB, so the file is mapped in 1 GiB segments.
+ */
+internal class MappedFile(channel: FileChannel) {
+    val size = channel.size()
+
+    private val segments = Array(((size + SEGMENT_SIZE - 1) ushr SEGMENT_SHIFT).toInt()) {
+        val start = it.toLong() shl SEGMENT_SHIFT
+        channel.map(FileChannel.MapMode.READ_ONLY, start, minOf(SEGMENT_SIZE, size - start))
+            .order(ByteOrder.BIG_ENDIAN)
+    }
+
+    fun get(position: Long): Byte =
+        segments[(position ushr SEGMENT_SHIFT).toInt()].get((position and SEGMENT_MASK).toInt())
+
+    /**
+     * Reads a long at a position that is a multiple of 8, so it never crosses a segment boundary.
+     */
+    fun getLong(position: Long): Long =
+        segments[(position ushr SEGMENT_SHIFT).toInt()].getLong((position and SEGMENT_MASK).toInt())
+
+    private companion object {
+        const val SEGMENT_SHIFT = 30
+        const val SEGMENT_SIZE = 1L shl SEGMENT_SHIFT
+        const val SEGMENT_MASK = SEGMENT_SIZE - 1
+    }
+}
@@ -0,0 +1,192 @@
+package pr0gramm3r101.randomnickgen.corpus
+
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.random.RandomGenerator
+
+/**
+ * Makes up pronounceable words with an order-[order] character model: every character is picked by
+ * how often it follows the [order] characters before it in a word list.
+ *
+ * The model is a sparse transition table in primitive arrays: per context (the last [order] symbols,
+ * as a base-[ALPHABET] number), a range of next symbols with cumulative counts, so picking a character
+ * is a random number and a binary search over at most [ALPHABET] entries. The end of a word is symbol 0
+ * and always comes first in a context, so it's easy to leave out while a word is still too short.
+ *
+ * Words that are in [dictionary] are skipped, so the words are made up, and less likely to be taken.
+ *
+ * Layout of a compiled model (big-endian):
+ * ```
+ * int              magic ("RNGM")
+ * int              version
+ * int              order (k)
+ * int              transition count (T)
+ * int[38^k + 1]    index of the first transition of every context
+ * byte[T]          next symbol of every transition
+ * int[T]           cumulative count of every transition within its context
+ * ```
+ */
+class MarkovWordSource private constructor(
+    val order: Int,
+    private val starts: IntArray,
+    private val symbols: ByteArray,
+    private val cumulative: IntArray,
+    private val dictionary: Corpus?
+) : WordSource {
+    private val contexts = starts.size - 1
+
+    override val maxLength = MAX_WORD_LENGTH
+
+    /**
+     * Made up words are practically unlimited, so every length the model can make counts as [Long.MAX_VALUE] words.
+     */
+    override fun count(minLength: Int, maxLength: Int) =
+        if (maxOf(minLength, 1) <= minOf(maxLength, MAX_WORD_LENGTH)) Long.MAX_VALUE else 0L
+
+    override fun randomWord(
+        random: RandomGenerator,
+        minLength: Int,
+        maxLength: Int,
+        destination: CharArray,
+        offset: Int
+    ): Int {
+        val min = maxOf(minLength, 1)
+        val max = minOf(maxLength, MAX_WORD_LENGTH)
+        if (min > max) return -1
+        attempts@ for (attempt in 0..<MAX_ATTEMPTS) {
+            var context = 0
+            var length = 0
+            while (true) {
+                val from = starts[context]
+                val to = starts[context + 1]
+                if (from == to) continue@attempts
+                val total = cumulative[to - 1]
+                val endWeight = if (symbols[from].toInt() == 0) cumulative[from] else 0
+                val target = when {
+                    length >= max -> if (endWeight > 0) 0 else continue@attempts
+                    length < min -> if (endWeight < total) random.nextInt(endWeight, total) else continue@attempts
+                    else -> random.nextInt(total)
+                }
+                val symbol = symbols[search(from, to, target)].toInt()
+                if (symbol == 0) {
+                    if (dictionary != null && dictionary.indexOf(destination, offset, length) >= 0) continue@attempts
+                    return length
+                }
+                destination[offset + length++] = CHARS[symbol]
+                context = (context * ALPHABET + symbol) % contexts
+            }
+        }
+        return -1
+    }
+
+    // The first transition in from..<to whose cumulative count is above target
+    private fun search(from: Int, to: Int, target: Int): Int {
+        var low = from
+        var high = to - 1
+        while (low < high) {
+            val middle = (low + high) ushr 1
+            if (cumulative[middle] > target) high = middle else low = middle + 1
+        }
+        return low
+    }
+
+    companion object {
+        const val MAGIC = 0x524E474D // "RNGM"
+        const val VERSION = 1
+        const val DEFAULT_ORDER = 3
+
+        /**
+         * The number of symbols: the end of a word, followed by the characters of [CHARS].
+         */
+        const val ALPHABET = 38
+        private const val CHARS = "\u0000abcdefghijklmnopqrstuvwxyz0123456789_"
+        private const val MAX_ATTEMPTS = 100
+
+        private val symbolsByChar = IntArray(128) { -1 }.also { codes ->
+            for (symbol in 1..<ALPHABET) codes[CHARS[symbol].code] = symbol
+        }
+
+        /**
+         * Opens a compiled model.
+         * @throws IOException if the buffer doesn't contain a compiled model
+         */
+        fun open(buffer: ByteBuffer, dictionary: Corpus? = null): MarkovWordSource {
+            val data = buffer.duplicate().order(ByteOrder.BIG_ENDIAN)
+            if (data.remaining() < 4 * Int.SIZE_BYTES || data.getInt() != MAGIC) {
+                throw IOException("Not a compiled word model")
+            }
+            val version = data.getInt()
+            if (version != VERSION) throw IOException("Unsupported word model version $version")
+            val order = data.getInt()
+            val transitions = data.getInt()
+            if (order !in 1..4 || transitions < 0) throw IOException("Corrupt word model")
+            val starts = IntArray(contexts(order) + 1)
+            if (data.remaining() < starts.size * Int.SIZE_BYTES + transitions * (1 + Int.SIZE_BYTES)) {
+                throw IOException("Truncated word model")
+            }
+            data.asIntBuffer().get(starts)
+            data.position(data.position() + starts.size * Int.SIZE_BYTES)
+            val symbols = ByteArray(transitions).also { data.get(it) }
+            val cumulative = IntArray(transitions).also { data.asIntBuffer().get(it) }
+            return MarkovWordSource(order, starts, symbols, cumulative, dictionary)
+        }
+
+        /**
+         * Opens a compiled model from the classpath, or `null` if there is no such resource.
+         */
+        fun resource(name: String, dictionary: Corpus? = null) = MarkovWordSource::class.java.getResourceAsStream(name)
+            ?.use { open(ByteBuffer.wrap(it.readAllBytes()), dictionary) }
+
+        /**
+         * Trains a model on a whitespace-separated word list in a single pass.
+         */
+        fun train(path: Path, order: Int = DEFAULT_ORDER, dictionary: Corpus? = null): MarkovWordSource {
+            require(order in 1..4) { "Order must be 1-4" }
+            val contexts = contexts(order)
+            // Dense counts while training, 38^(k+1) ints (8 MB for order 3), compacted afterwards
+            val counts = IntArray(contexts * ALPHABET)
+            FileChannel.open(path, StandardOpenOption.READ).use { channel ->
+                WordScanner(channel).scan { _, word, length ->
+                    var context = 0
+                    for (i in 0..<length) {
+                        val symbol = symbolsByChar[word[i].toInt()]
+                        counts[context * ALPHABET + symbol]++
+                        context = (context * ALPHABET + symbol) % contexts
+                    }
+                    counts[context * ALPHABET]++
+                }
+            }
+
+            val starts = IntArray(contexts + 1)
+            for (context in 0..<contexts) {
+                var used = 0
+                for (symbol in 0..<ALPHABET) if (counts[context * ALPHABET + symbol] > 0) used++
+                starts[context + 1] = starts[context] + used
+            }
+            val symbols = ByteArray(starts[contexts])
+            val cumulative = IntArray(starts[contexts])
+            for (context in 0..<contexts) {
+                var i = starts[context]
+                var total = 0
+                for (symbol in 0..<ALPHABET) {
+                    val count = counts[context * ALPHABET + symbol]
+                    if (count == 0) continue
+                    total += count
+                    symbols[i] = symbol.toByte()
+                    cumulative[i++] = total
+                }
+            }
+            return MarkovWordSource(order, starts, symbols, cumulative, dictionary)
+        }
+
+        private fun contexts(order: Int): Int {
+            var contexts = 1
+            repeat(order) { contexts *= ALPHABET }
+            return contexts
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package pr0gramm3r101.randomnickgen.corpus
+
+import java.io.IOException
+import java.nio.channels.FileChannel
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.random.RandomGenerator
+
+/**
+ * A [WordSource] that samples a word list of any size in a single streaming pass, without indexing it.
+ *
+ * Every word length keeps its own reservoir of up to `capacity` words (reservoir sampling),
+ * so memory use depends only on the capacity. Words are handed out without repetition
+ * while a reservoir lasts and with repetition afterwards, so the capacity should be
+ * the number of words that are going to be drawn.
+ * Draws of a length lock its reservoir, so generators on several threads can share a sample.
+ */
+class StreamingWordSample private constructor(private val capacity: Int) : WordSource {
+    override val maxLength = MAX_WORD_LENGTH
+
+    private val seen = LongArray(MAX_WORD_LENGTH + 1)
+    private val filled = IntArray(MAX_WORD_LENGTH + 1)
+    private val used = IntArray(MAX_WORD_LENGTH + 1)
+    private val reservoirs = arrayOfNulls<ByteArray>(MAX_WORD_LENGTH + 1)
+
+    private fun offer(word: ByteArray, length: Int, random: RandomGenerator) {
+        val n = seen[length]++
+        val slot = if (n < capacity) n.toInt() else random.nextLong(n + 1).let {
+            if (it < capacity) it.toInt() else return
+        }
+        val reservoir = reservoirs[length] ?: ByteArray(capacity * length).also { reservoirs[length] = it }
+        word.copyInto(reservoir, slot * length, 0, length)
+        filled[length] = maxOf(filled[length], slot + 1)
+    }
+
+    override fun count(minLength: Int, maxLength: Int): Long {
+        var count = 0L
+        for (length in minLength.coerceAtLeast(1)..maxLength.coerceAtMost(MAX_WORD_LENGTH)) count += seen[length]
+        return count
+    }
+
+    override fun randomWord(
+        random: RandomGenerator,
+        minLength: Int,
+        maxLength: Int,
+        destination: CharArray,
+        offset: Int
+    ): Int {
+        val total = count(minLength, maxLength)
+        if (total == 0L) return -1
+
+        // Pick the length with the probability it has in the whole word list
+        var target = random.nextLong(total)
+        var length = minLength.coerceAtLeast(1)
+        while (target >= seen[length]) target -= seen[length++]
+
+        val reservoir = reservoirs[length]!!
+        synchronized(reservoir) {
+            val slot = if (used[length] < filled[length]) {
+                // Move a random unused word to the front of the unused ones and use it
+                val slot = used[length]++
+                val other = random.nextInt(slot, filled[length])
+                for (i in 0..<length) {
+                    val byte = reservoir[slot * length + i]
+                    reservoir[slot * length + i] = reservoir[other * length + i]
+                    reservoir[other * length + i] = byte
+                }
+                slot
+            } else {
+                random.nextInt(filled[length])
+            }
+            for (i in 0..<length) destination[offset + i] = reservoir[slot * length + i].toInt().toChar()
+        }
+        return length
+    }
+
+    companion object {
+        /**
+         * Samples up to [capacity] words of every length from a word list, using [random] to pick them.
+         * @throws IOException if an I/O error occurs
+         */
+        fun sample(path: Path, capacity: Int, random: RandomGenerator): StreamingWordSample {
+            require(capacity in 1..Int.MAX_VALUE / MAX_WORD_LENGTH) { "Invalid capacity: $capacity" }
+            val sample = StreamingWordSample(capacity)
+            FileChannel.open(path, StandardOpenOption.READ).use { channel ->
+                WordScanner(channel).scan { _, word, length -> sample.offer(word, length, random) }
+            }
+            return sample
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package pr0gramm3r101.randomnickgen.corpus
+
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.random.RandomGenerator
+
+/**
+ * A [WordSource] that combines several word lists with per-list and per-word weights.
+ *
+ * Every list gets the share of draws given by its weight. Within a list, a word written as
+ * `word:weight` is drawn proportionally to its weight, plain words have a weight of 1.
+ * Draws go through one [AliasTable] per word length, so they stay O(1) however many words there are.
+ */
+class WeightedWordSource private constructor(
+    private val data: ByteArray,
+    private val offsets: IntArray,
+    private val buckets: IntArray,
+    private val tables: Array<AliasTable>
+) : WordSource {
+    override val maxLength = MAX_WORD_LENGTH
+
+    override fun count(minLength: Int, maxLength: Int): Long {
+        var count = 0L
+        for (length in minLength.coerceAtLeast(1)..maxLength.coerceAtMost(MAX_WORD_LENGTH)) count += tables[length].size
+        return count
+    }
+
+    override fun randomWord(
+        random: RandomGenerator,
+        minLength: Int,
+        maxLength: Int,
+        destination: CharArray,
+        offset: Int
+    ): Int {
+        val min = minLength.coerceAtLeast(1)
+        val max = maxLength.coerceAtMost(MAX_WORD_LENGTH)
+        var total = 0.0
+        for (length in min..max) total += tables[length].totalWeight
+        if (total <= 0) return -1
+
+        // Pick a length by its share of the weight, then a word of that length from its table
+        var target = random.nextDouble() * total
+        var length = min
+        for (candidate in min..max) {
+            val weight = tables[candidate].totalWeight
+            if (weight <= 0) continue
+            length = candidate
+            if (target < weight) break
+            target -= weight
+        }
+        val i = buckets[length] + tables[length].next(random)
+        for (j in 0..<length) destination[offset + j] = data[offsets[i] + j].toInt().toChar()
+        return length
+    }
+
+    /**
+     * A word list with its weight.
+     */
+    data class WeightedList(val path: Path, val weight: Double)
+
+    companion object {
+        /**
+         * Loads the given word lists into memory.
+         * @throws IOException if an I/O error occurs
+         */
+        fun load(lists: List<WeightedList>): WeightedWordSource {
+            val entries = Entries()
+            for ((path, weight) in lists) {
+                require(weight >= 0 && weight.isFinite()) { "Invalid weight of $path: $weight" }
+                val first = entries.size
+                parse(Files.readAllBytes(path), entries)
+
+                // Give every list the share set by its weight, however many words it has
+                var total = 0.0
+                for (i in first..<entries.size) total += entries.weights[i]
+                for (i in first..<entries.size) entries.weights[i] = entries.weights[i] / total * weight
+            }
+
+            // Counting sort by length, so every length has one contiguous range to build a table over
+            val buckets = IntArray(MAX_WORD_LENGTH + 2)
+            for (i in 0..<entries.size) buckets[entries.lengths[i] + 1]++
+            for (i in 1..<buckets.size) buckets[i] += buckets[i - 1]
+            val next = buckets.copyOf()
+            val offsets = IntArray(entries.size)
+            val weights = DoubleArray(entries.size)
+            for (i in 0..<entries.size) {
+                val slot = next[entries.lengths[i]]++
+                offsets[slot] = entries.offsets[i]
+                weights[slot] = entries.weights[i]
+            }
+            val tables = Array(MAX_WORD_LENGTH + 1) { AliasTable(weights, buckets[it], buckets[it + 1]) }
+            return WeightedWordSource(entries.data, offsets, buckets, tables)
+        }
+
+        /**
+         * @return Whether the word list at [path] has `word:weight` tokens, which only this source reads.
+         * The file is streamed until the first `:`.
+         * @throws IOException if an I/O error occurs
+         */
+        fun isWeighted(path: Path): Boolean {
+            FileChannel.open(path, StandardOpenOption.READ).use { channel ->
+                val buffer = ByteBuffer.allocateDirect(1 shl 20)
+                var position = 0L
+                while (true) {
+                    buffer.clear()
+                    val read = channel.read(buffer, position)
+                    if (read <= 0) return false
+                    for (i in 0..<read) if (buffer.get(i) == ':'.code.toByte()) return true
+                    position += read
+                }
+            }
+        }
+
+        /**
+         * Parses whitespace-separated `word` or `word:weight` tokens, skipping anything that can't become a username.
+         */
+        private fun parse(text: ByteArray, entries: Entries) {
+            var start = 0
+            for (i in 0..text.size) {
+                val byte = if (i < text.size) text[i].toInt() else ' '.code
+                if (byte != ' '.code && byte != '\n'.code && byte != '\r'.code && byte != '\t'.code) continue
+                if (i > start) parseToken(text, start, i, entries)
+                start = i + 1
+            }
+        }
+
+        private fun parseToken(text: ByteArray, start: Int, end: Int, entries: Entries) {
+            var wordEnd = end
+            var weight = 1.0
+            for (i in start..<end) {
+                if (text[i] == ':'.code.toByte()) {
+                    wordEnd = i
+                    weight = String(text, i + 1, end - i - 1, Charsets.US_ASCII).toDoubleOrNull() ?: return
+                    break
+                }
+            }
+            val length = wordEnd - start
+            if (length !in 1..MAX_WORD_LENGTH || weight <= 0 || !weight.isFinite()) return
+
+            val offset = entries.reserve(length)
+            for (i in 0..<length) {
+                var char = text[start + i].toInt()
+                if (char in 'A'.code..'Z'.code) char += 'a' - 'A'
+                if (char !in 'a'.code..'z'.code && char !in '0'.code..'9'.code && char != '_'.code) return
+                entries.data[offset + i] = char.toByte()
+            }
+            entries.add(offset, length, weight)
+        }
+    }
+
+    /**
+     * Growable primitive arrays of parsed words.
+     */
+    private class Entries {
+        var data = ByteArray(1024)
+        var dataSize = 0
+        var offsets = IntArray(256)
+        var lengths = IntArray(256)
+        var weights = DoubleArray(256)
+        var size = 0
+
+        /**
+         * Makes room for a word of [length] bytes and returns its offset. The space is only kept by [add].
+         */
+        fun reserve(length: Int): Int {
+            if (dataSize + length > data.size) data = data.copyOf(maxOf(data.size * 2, dataSize + length))
+            return dataSize
+        }
+
+        fun add(offset: Int, length: Int, weight: Double) {
+            if (size == offsets.size) {
+                offsets = offsets.copyOf(size * 2)
+                lengths = lengths.copyOf(size * 2)
+                weights = weights.copyOf(size * 2)
+            }
+            offsets[size] = offset
+            lengths[size] = length
+            weights[size] = weight
+            size++
+            dataSize = offset + length
+        }
+    }
+}
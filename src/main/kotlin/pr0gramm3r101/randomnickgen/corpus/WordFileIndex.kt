@@ -0,0 +1,135 @@
+package pr0gramm3r101.randomnickgen.corpus
+
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.util.random.RandomGenerator
+
+/**
+ * A [WordSource] over a plain word list of any size, read through an offset index.
+ *
+ * The index is built with two streaming passes the first time a word list is used
+ * and cached next to it as `<file>.idx`. It's rebuilt whenever the word list changes.
+ * Both files are memory-mapped, so heap use doesn't depend on the size of the word list.
+ *
+ * Index layout (big-endian):
+ * ```
+ * int                        magic ("RNGI")
+ * int                        version
+ * long                       word list size
+ * long                       word list modification time
+ * long[MAX_WORD_LENGTH + 2]  index of the first word of each length 0..MAX_WORD_LENGTH+1
+ * long[count]                word offsets in the word list, sorted by word length
+ * ```
+ */
+class WordFileIndex private constructor(private val words: MappedFile, private val index: MappedFile) : WordSource {
+    override val maxLength = MAX_WORD_LENGTH
+
+    private val buckets = LongArray(MAX_WORD_LENGTH + 2) { index.getLong(BUCKETS_START + it * Long.SIZE_BYTES) }
+
+    private fun lengthStart(length: Int) = buckets[length.coerceIn(0, MAX_WORD_LENGTH + 1)]
+
+    private fun lengthEnd(length: Int) = buckets[(length.coerceAtMost(MAX_WORD_LENGTH) + 1).coerceAtLeast(0)]
+
+    override fun count(minLength: Int, maxLength: Int) =
+        if (minLength > maxLength) 0 else lengthEnd(maxLength) - lengthStart(minLength)
+
+    override fun randomWord(
+        random: RandomGenerator,
+        minLength: Int,
+        maxLength: Int,
+        destination: CharArray,
+        offset: Int
+    ): Int {
+        val start = lengthStart(minLength)
+        val end = lengthEnd(maxLength)
+        if (minLength > maxLength || start >= end) return -1
+
+        val i = random.nextLong(start, end)
+        var length = 1
+        while (buckets[length + 1] <= i) length++
+        val position = index.getLong(ENTRIES_START + i * Long.SIZE_BYTES)
+        for (j in 0..<length) {
+            destination[offset + j] = Character.toLowerCase(words.get(position + j).toInt().toChar())
+        }
+        return length
+    }
+
+    companion object {
+        private const val MAGIC = 0x524E4749 // "RNGI"
+        private const val VERSION = 1
+        private const val BUCKETS_START = 3L * Long.SIZE_BYTES
+        private const val ENTRIES_START = BUCKETS_START + (MAX_WORD_LENGTH + 2) * Long.SIZE_BYTES
+        private const val WRITE_BUFFER_SIZE = 64 * 1024
+
+        /**
+         * Opens a word list, building or rebuilding its index if needed.
+         * @throws IOException if an I/O error occurs
+         */
+        fun open(path: Path): WordFileIndex {
+            val indexPath = path.resolveSibling("${path.fileName}.idx")
+            FileChannel.open(path, StandardOpenOption.READ).use { words ->
+                if (!isUpToDate(indexPath, words.size(), Files.getLastModifiedTime(path).toMillis())) {
+                    build(words, Files.getLastModifiedTime(path).toMillis(), indexPath)
+                }
+                return FileChannel.open(indexPath, StandardOpenOption.READ).use {
+                    WordFileIndex(MappedFile(words), MappedFile(it))
+                }
+            }
+        }
+
+        private fun isUpToDate(indexPath: Path, size: Long, modified: Long): Boolean {
+            if (!Files.isRegularFile(indexPath)) return false
+            FileChannel.open(indexPath, StandardOpenOption.READ).use {
+                val header = ByteBuffer.allocate(BUCKETS_START.toInt())
+                if (it.read(header, 0) < header.capacity()) return false
+                return header.getInt(0) == MAGIC && header.getInt(4) == VERSION &&
+                        header.getLong(8) == size && header.getLong(16) == modified
+            }
+        }
+
+        private fun build(words: FileChannel, modified: Long, indexPath: Path) {
+            val scanner = WordScanner(words)
+
+            // First pass: count the words of every length
+            val buckets = LongArray(MAX_WORD_LENGTH + 2)
+            scanner.scan { _, _, length -> buckets[length + 1]++ }
+            for (i in 1..<buckets.size) buckets[i] += buckets[i - 1]
+
+            val temp = Files.createTempFile(indexPath.toAbsolutePath().parent, "${indexPath.fileName}", ".tmp")
+            try {
+                FileChannel.open(temp, StandardOpenOption.WRITE).use { index ->
+                    val header = ByteBuffer.allocate(ENTRIES_START.toInt())
+                    header.putInt(MAGIC).putInt(VERSION).putLong(words.size()).putLong(modified)
+                    buckets.forEach { header.putLong(it) }
+                    header.flip()
+                    while (header.hasRemaining()) index.write(header, header.position().toLong())
+
+                    // Second pass: write every offset into its length bucket, through a small buffer per bucket
+                    val next = buckets.copyOf()
+                    val pending = Array(MAX_WORD_LENGTH + 1) { ByteBuffer.allocate(WRITE_BUFFER_SIZE) }
+                    fun flush(length: Int) {
+                        val buffer = pending[length].flip()
+                        val entries = buffer.remaining() / Long.SIZE_BYTES
+                        var position = ENTRIES_START + (next[length] - entries) * Long.SIZE_BYTES
+                        while (buffer.hasRemaining()) position += index.write(buffer, position)
+                        buffer.clear()
+                    }
+                    scanner.scan { offset, _, length ->
+                        pending[length].putLong(offset)
+                        next[length]++
+                        if (!pending[length].hasRemaining()) flush(length)
+                    }
+                    for (length in 1..MAX_WORD_LENGTH) flush(length)
+                }
+                Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+            } finally {
+                Files.deleteIfExists(temp)
+            }
+        }
+    }
+}
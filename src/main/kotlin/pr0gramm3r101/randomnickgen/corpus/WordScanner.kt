@@ -0,0 +1,71 @@
+package pr0gramm3r101.randomnickgen.corpus
+
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * The longest word that can be used in a username.
+ */
+const val MAX_WORD_LENGTH = 16
+
+/**
+ * Splits a word list into words with a single streaming pass over a [FileChannel].
+ *
+ * Words are separated by whitespace and lowercased.
+ * Anything that isn't a 1-[MAX_WORD_LENGTH] character `[a-z0-9_]` word is skipped,
+ * because it can never become a username.
+ */
+internal class WordScanner(private val channel: FileChannel) {
+    fun interface Visitor {
+        /**
+         * Called for every usable word.
+         * @param offset The position of the word in the file
+         * @param word The lowercased word, only valid for the duration of the call
+         * @param length The word length
+         */
+        fun visit(offset: Long, word: ByteArray, length: Int)
+    }
+
+    fun scan(visitor: Visitor) {
+        val buffer = ByteBuffer.allocateDirect(BUFFER_SIZE)
+        val word = ByteArray(MAX_WORD_LENGTH)
+        var length = 0
+        var valid = true
+        var start = 0L
+        var position = 0L
+
+        while (true) {
+            buffer.clear()
+            val read = channel.read(buffer, position)
+            if (read <= 0) break
+
+            for (i in 0..<read) {
+                val byte = buffer.get(i).toInt()
+                if (byte == ' '.code || byte == '\n'.code || byte == '\r'.code || byte == '\t'.code) {
+                    if (length > 0 && valid) visitor.visit(start, word, length)
+                    length = 0
+                    valid = true
+                    continue
+                }
+
+                if (length == 0) start = position + i
+                val char = if (byte in 'A'.code..'Z'.code) byte + ('a' - 'A') else byte
+                if (length < MAX_WORD_LENGTH && isWordChar(char)) {
+                    word[length++] = char.toByte()
+                } else {
+                    valid = false
+                    if (length < MAX_WORD_LENGTH) length++
+                }
+            }
+            position += read
+        }
+        if (length > 0 && valid) visitor.visit(start, word, length)
+    }
+
+    private fun isWordChar(char: Int) =
+        char in 'a'.code..'z'.code || char in '0'.code..'9'.code || char == '_'.code
+
+    private companion object {
+        const val BUFFER_SIZE = 1 shl 20
+    }
+}
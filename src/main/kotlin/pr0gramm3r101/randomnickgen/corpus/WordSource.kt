@@ -0,0 +1,35 @@
+package pr0gramm3r101.randomnickgen.corpus
+
+import java.util.random.RandomGenerator
+
+/**
+ * A collection of words that can be sampled by length.
+ */
+interface WordSource {
+    /**
+     * The length of the longest word.
+     */
+    val maxLength: Int
+
+    /**
+     * @return The number of words between [minLength] and [maxLength] characters long.
+     */
+    fun count(minLength: Int, maxLength: Int): Long
+
+    /**
+     * Copies a random word between [minLength] and [maxLength] characters long into [destination] at [offset].
+     * The destination must have room for `min(maxLength, this.maxLength)` characters.
+     * @return The length of the word, or -1 if there is no such word.
+     */
+    fun randomWord(random: RandomGenerator, minLength: Int, maxLength: Int, destination: CharArray, offset: Int): Int
+
+    /**
+     * @return A random word between [minLength] and [maxLength] characters long,
+     * or `null` if there is no such word.
+     */
+    fun randomWord(random: RandomGenerator, minLength: Int, maxLength: Int): String? {
+        val chars = CharArray(minOf(maxLength, this.maxLength).coerceAtLeast(0))
+        val length = randomWord(random, minLength, maxLength, chars, 0)
+        return if (length < 0) null else String(chars, 0, length)
+    }
+}
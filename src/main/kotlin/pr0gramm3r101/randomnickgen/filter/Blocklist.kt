@@ -0,0 +1,144 @@
+package pr0gramm3r101.randomnickgen.filter
+
+import pr0gramm3r101.randomnickgen.generator.LeetTransform
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * Rejects names that contain any of a list of banned terms, ignoring case and leet replacements.
+ *
+ * All terms are compiled into one Aho–Corasick automaton, so a name is checked in a single pass over its
+ * characters, no matter how many terms there are. The automaton is a dense `int[]` transition table with the
+ * failure links already folded in, so every character costs one class lookup and one table read.
+ *
+ * Every term is expanded into its leet variants first, with each letter either kept or replaced by what the
+ * leet stages can turn it into, so `l33t` and `1eet` match `leet` while `1` still only stands for the letters
+ * that are actually mapped to it. Characters are then matched by class: uppercase letters are in the class
+ * of their lowercase letter, and characters that aren't in any variant share class 0, which never matches.
+ */
+class Blocklist(terms: Collection<String>, leet: List<LeetTransform> = emptyList()) : NameFilter {
+    private val classes = IntArray(128)
+    private val classCount: Int
+    private val transitions: IntArray
+    private val matches: BooleanArray
+
+    /**
+     * The number of states of the automaton.
+     */
+    val states: Int
+
+    init {
+        // Everything every character can become through the leet stages, in order
+        val replacements = Array(128) { mutableSetOf(it.toChar()) }
+        for (stage in leet) {
+            for (options in replacements) {
+                val replaced = options.flatMap { stage.mappings[it.lowercaseChar()].orEmpty() }
+                options += replaced
+            }
+        }
+
+        val normalized = terms.map { it.trim() }.filter { it.isNotEmpty() }.flatMap { term ->
+            val options = term.map {
+                if (it.code < 128) replacements[it.code].map(Char::lowercaseChar).distinct() else listOf(it)
+            }
+            val variants = options.fold(1L) { product, it -> product * it.size }
+            require(variants <= MAX_VARIANTS) { "\"$term\" has $variants leet variants, more than $MAX_VARIANTS" }
+            options.fold(listOf("")) { prefixes, chars -> prefixes.flatMap { prefix -> chars.map { prefix + it } } }
+        }
+
+        val ids = IntArray(128) { -1 }
+        var count = 1
+        for (term in normalized) {
+            for (char in term) {
+                if (char.code < 128 && ids[char.code] < 0) ids[char.code] = count++
+            }
+        }
+        for (c in 0..<128) classes[c] = ids[c.toChar().lowercaseChar().code].coerceAtLeast(0)
+        classCount = count
+
+        // Trie of the terms, class 0 is never a trie edge
+        var table = IntArray(64 * classCount)
+        var output = BooleanArray(64)
+        var size = 1
+        for (term in normalized) {
+            var state = 0
+            for (char in term) {
+                val c = classOf(char)
+                if (c == 0) {
+                    state = -1
+                    break
+                }
+                var next = table[state * classCount + c]
+                if (next == 0) {
+                    if (size * classCount == table.size) {
+                        table = table.copyOf(table.size * 2)
+                        output = output.copyOf(output.size * 2)
+                    }
+                    next = size++
+                    table[state * classCount + c] = next
+                }
+                state = next
+            }
+            if (state >= 0) output[state] = true
+        }
+
+        // Breadth-first over the trie, turning it into a complete automaton:
+        // missing edges go where the failure link's edge goes, and a state matches if its failure state does
+        val failure = IntArray(size)
+        val queue = IntArray(size)
+        var head = 0
+        var tail = 0
+        for (c in 1..<classCount) {
+            val next = table[c]
+            if (next != 0) queue[tail++] = next
+        }
+        while (head < tail) {
+            val state = queue[head++]
+            output[state] = output[state] || output[failure[state]]
+            for (c in 1..<classCount) {
+                val next = table[state * classCount + c]
+                if (next != 0) {
+                    failure[next] = table[failure[state] * classCount + c]
+                    queue[tail++] = next
+                } else {
+                    table[state * classCount + c] = table[failure[state] * classCount + c]
+                }
+            }
+        }
+        states = size
+        transitions = table.copyOf(size * classCount)
+        matches = output.copyOf(size)
+    }
+
+    private fun classOf(char: Char) = if (char.code < 128) classes[char.code] else 0
+
+    /**
+     * @return Whether [name] contains a banned term.
+     */
+    fun matches(name: CharSequence): Boolean {
+        var state = 0
+        for (i in 0..<name.length) {
+            state = transitions[state * classCount + classOf(name[i])]
+            if (matches[state]) return true
+        }
+        return false
+    }
+
+    override fun accepts(name: CharSequence) = !matches(name)
+
+    companion object {
+        /**
+         * The most leet variants a single term may have.
+         */
+        const val MAX_VARIANTS = 4096
+
+        /**
+         * Reads terms from a file, one per line. Empty lines and lines starting with `#` are skipped.
+         * @param leet The leet stages whose replacements are matched too
+         */
+        fun load(path: Path, leet: List<LeetTransform> = emptyList()) = Blocklist(
+            Files.readAllLines(path).filter { !it.trimStart().startsWith('#') },
+            leet
+        )
+    }
+}
@@ -0,0 +1,12 @@
+package pr0gramm3r101.randomnickgen.filter
+
+/**
+ * A check that generated names have to pass, such as a [Blocklist].
+ * Names that don't pass are thrown away and generated again.
+ */
+fun interface NameFilter {
+    /**
+     * @return Whether [name] can be used.
+     */
+    fun accepts(name: CharSequence): Boolean
+}
@@ -0,0 +1,60 @@
+package pr0gramm3r101.randomnickgen.filter
+
+import pr0gramm3r101.randomnickgen.generator.MAX_LENGTH
+import pr0gramm3r101.randomnickgen.generator.MIN_LENGTH
+
+/**
+ * Checks names against the Minecraft username rules: 3-16 characters from `A-Z`, `a-z`, `0-9` and `_`.
+ *
+ * Every character is looked up in a 128-entry table that is 0 for allowed characters and 1 otherwise,
+ * and the results are OR-ed together, so the loop over a name has no branches besides its bounds.
+ * Characters outside ASCII are caught by their high bits.
+ *
+ * The Vector API would need the incubator module at run time, so the bulk variant [validate]
+ * is a plain loop over a batch instead, which the JIT unrolls well enough for 16-character names.
+ */
+object UsernameValidator : NameFilter {
+    private val invalid = ByteArray(128) { 1 }
+
+    init {
+        for (c in ('A'..'Z') + ('a'..'z') + ('0'..'9') + '_') invalid[c.code] = 0
+    }
+
+    /**
+     * @return Whether [name] is a valid Minecraft username.
+     */
+    fun isValid(name: CharSequence): Boolean {
+        val length = name.length
+        if (length < MIN_LENGTH || length > MAX_LENGTH) return false
+        var bad = 0
+        for (i in 0..<length) {
+            val c = name[i].code
+            bad = bad or (c ushr 7) or invalid[c and 0x7F].toInt()
+        }
+        return bad == 0
+    }
+
+    override fun accepts(name: CharSequence) = isValid(name)
+
+    /**
+     * Validates [names] from [from] to [to] in one loop, storing the results at the same indices of [results].
+     * @return The number of valid names.
+     */
+    fun validate(names: List<CharSequence>, results: BooleanArray, from: Int = 0, to: Int = names.size): Int {
+        var valid = 0
+        for (i in from..<to) {
+            results[i] = isValid(names[i])
+            if (results[i]) valid++
+        }
+        return valid
+    }
+
+    /**
+     * @return The valid names of [names].
+     */
+    fun <T : CharSequence> filterValid(names: List<T>): List<T> {
+        val results = BooleanArray(names.size)
+        if (validate(names, results) == names.size) return names
+        return names.filterIndexed { i, _ -> results[i] }
+    }
+}
@@ -0,0 +1,63 @@
+package pr0gramm3r101.randomnickgen.generator
+
+/**
+ * A pseudo-random permutation of the numbers from 0 to [size] - 1, chosen by [key].
+ *
+ * A 4-round Feistel network shuffles the smallest even number of bits that fits [size],
+ * and numbers that land outside the range are shuffled again (cycle walking) until they're inside it.
+ * The network covers less than 4 times [size], so that takes fewer than 4 rounds on average.
+ * Nothing is stored per number, so any range of a permutation of any size can be walked in constant memory.
+ */
+class IndexPermutation(val size: Long, key: Long) {
+    private val halfBits: Int
+    private val halfMask: Long
+    private val keys = LongArray(ROUNDS)
+
+    init {
+        require(size >= 0) { "Negative size $size" }
+        val bits = if (size <= 1) 0 else 64 - java.lang.Long.numberOfLeadingZeros(size - 1)
+        halfBits = (bits + 1) / 2
+        halfMask = (1L shl halfBits) - 1
+        var state = key
+        for (i in keys.indices) {
+            state += GOLDEN_GAMMA
+            keys[i] = mix(state)
+        }
+    }
+
+    /**
+     * @return The number at position [index] of the permutation.
+     */
+    operator fun get(index: Long): Long {
+        if (index !in 0..<size) throw IndexOutOfBoundsException("Index $index, size $size")
+        var x = index
+        do {
+            x = shuffle(x)
+        } while (x >= size)
+        return x
+    }
+
+    private fun shuffle(x: Long): Long {
+        var left = x ushr halfBits
+        var right = x and halfMask
+        for (key in keys) {
+            val next = left xor (mix(right xor key) and halfMask)
+            left = right
+            right = next
+        }
+        return (left shl halfBits) or right
+    }
+
+    private companion object {
+        const val ROUNDS = 4
+        const val GOLDEN_GAMMA = -0x61c8864680b583ebL
+
+        // The SplitMix64 finalizer
+        fun mix(x: Long): Long {
+            var z = x
+            z = (z xor (z ushr 30)) * -0x40a7b892e31b1a47L
+            z = (z xor (z ushr 27)) * -0x6b2fb644ecceee15L
+            return z xor (z ushr 31)
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package pr0gramm3r101.randomnickgen.generator
+
+import pr0gramm3r101.randomnickgen.corpus.IndexedWordSource
+import pr0gramm3r101.randomnickgen.corpus.WordSource
+import java.util.random.RandomGenerator
+
+/**
+ * A reusable character buffer that a nickname is assembled in, so that only the final [String] gets allocated.
+ * The contents can also be handed out as a [CharSequence] view without copying them.
+ */
+class NameBuffer(capacity: Int = 32) : CharSequence {
+    /**
+     * The backing array. Only the first [length] characters are part of the name.
+     */
+    var chars = CharArray(capacity)
+        private set
+
+    override var length = 0
+        private set
+
+    private fun ensureCapacity(capacity: Int) {
+        if (capacity > chars.size) chars = chars.copyOf(maxOf(capacity, chars.size * 2))
+    }
+
+    fun clear() {
+        length = 0
+    }
+
+    fun append(char: Char) {
+        ensureCapacity(length + 1)
+        chars[length++] = char
+    }
+
+    fun append(string: String) {
+        ensureCapacity(length + string.length)
+        string.toCharArray(chars, length)
+        length += string.length
+    }
+
+    fun prepend(char: Char) {
+        ensureCapacity(length + 1)
+        chars.copyInto(chars, 1, 0, length)
+        chars[0] = char
+        length++
+    }
+
+    fun prepend(string: String) {
+        ensureCapacity(length + string.length)
+        chars.copyInto(chars, string.length, 0, length)
+        string.toCharArray(chars, 0)
+        length += string.length
+    }
+
+    /**
+     * Appends a random word between [minLength] and [maxLength] characters long from [source].
+     * @return `false` if there is no such word.
+     */
+    fun appendWord(source: WordSource, random: RandomGenerator, minLength: Int, maxLength: Int): Boolean {
+        ensureCapacity(length + minOf(maxLength, source.maxLength).coerceAtLeast(0))
+        val wordLength = source.randomWord(random, minLength, maxLength, chars, length)
+        if (wordLength < 0) return false
+        length += wordLength
+        return true
+    }
+
+    /**
+     * Appends the word at [index] in [source].
+     */
+    fun appendWord(source: IndexedWordSource, index: Int) {
+        ensureCapacity(length + source.maxLength)
+        length += source.copyWord(index, chars, length)
+    }
+
+    /**
+     * Cuts the name down to [length] characters.
+     */
+    fun truncate(length: Int) {
+        if (length < this.length) this.length = length
+    }
+
+    override fun get(index: Int): Char {
+        if (index >= length) throw IndexOutOfBoundsException("Index $index, length $length")
+        return chars[index]
+    }
+
+    operator fun set(index: Int, char: Char) {
+        if (index >= length) throw IndexOutOfBoundsException("Index $index, length $length")
+        chars[index] = char
+    }
+
+    override fun subSequence(startIndex: Int, endIndex: Int) = toString().substring(startIndex, endIndex)
+
+    override fun toString() = String(chars, 0, length)
+}
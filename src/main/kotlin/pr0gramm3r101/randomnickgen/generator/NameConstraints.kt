@@ -0,0 +1,76 @@
+package pr0gramm3r101.randomnickgen.generator
+
+import pr0gramm3r101.randomnickgen.corpus.ConstrainedWordSource
+import pr0gramm3r101.randomnickgen.corpus.IndexedWordSource
+
+/**
+ * Limits on the generated names, pushed down into the word list and the pipeline,
+ * so that every name meets them the first time instead of being generated and thrown away.
+ *
+ * @param startsWith The text names start with, lowercase. It's taken from the start of the word,
+ * so prefixes and leading underscores are turned off and leet leaves it alone.
+ * @param excludedChars Characters names never contain. Words, affix values and leet replacements
+ * that contain them aren't used, and underscores aren't added if `_` is one of them.
+ */
+class NameConstraints(
+    val startsWith: String = "",
+    val minLength: Int = MIN_LENGTH,
+    val maxLength: Int = MAX_LENGTH,
+    val excludedChars: String = ""
+) {
+    init {
+        require(startsWith.all { it in 'a'..'z' || it in '0'..'9' || it == '_' }) {
+            "Names can only start with lowercase letters, digits and underscores"
+        }
+        require(minLength in MIN_LENGTH..maxLength && maxLength <= MAX_LENGTH) {
+            "The length must be between $MIN_LENGTH and $MAX_LENGTH"
+        }
+        require(startsWith.none { it in excludedChars }) { "'$startsWith' contains excluded characters" }
+    }
+
+    /**
+     * Whether there are no constraints beyond the usual length limits.
+     */
+    val isEmpty get() = startsWith.isEmpty() && minLength == MIN_LENGTH && maxLength == MAX_LENGTH && excludedChars.isEmpty()
+
+    /**
+     * @return The words of [words] that can be used.
+     */
+    fun apply(words: IndexedWordSource) = ConstrainedWordSource(words, startsWith, excludedChars)
+
+    /**
+     * @return [pipeline] with the stages changed to not break the constraints.
+     */
+    fun apply(pipeline: Pipeline): Pipeline {
+        val underscores = '_' !in excludedChars
+        return Pipeline(pipeline.transforms.mapNotNull { stage ->
+            when (stage) {
+                is AffixTransform -> {
+                    val values = stage.values.filter { value -> value.none { it in excludedChars } }
+                    if ((stage.prefix && startsWith.isNotEmpty()) || values.isEmpty()) null
+                    else AffixTransform(
+                        values.toTypedArray(),
+                        stage.prefix,
+                        stage.chance,
+                        if (underscores) stage.underscoreChance else 0.0
+                    )
+                }
+                is UnderscoreTransform -> UnderscoreTransform(
+                    if (underscores && startsWith.isEmpty()) stage.startChance else 0.0,
+                    if (underscores) stage.endChance else 0.0
+                )
+                is LeetTransform -> {
+                    val mappings = stage.mappings
+                        .mapValues { (_, to) -> to.filter { it !in excludedChars } }
+                        .filterValues { it.isNotEmpty() }
+                    if (mappings.isEmpty()) null else LeetTransform(mappings, stage.chance, maxOf(stage.skip, startsWith.length))
+                }
+                else -> stage
+            }
+        }, pipeline.filters)
+    }
+
+    companion object {
+        val NONE = NameConstraints()
+    }
+}
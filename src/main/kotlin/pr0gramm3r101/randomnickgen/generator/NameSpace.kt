@@ -0,0 +1,246 @@
+package pr0gramm3r101.randomnickgen.generator
+
+import pr0gramm3r101.randomnickgen.corpus.IndexedWordSource
+import java.util.random.RandomGenerator
+
+/**
+ * All the nicknames a [Pipeline] can make from [words] that are [minLength]-[maxLength] characters long,
+ * numbered from 0 to [size] - 1.
+ *
+ * A name is a deterministic function of its decisions: the variants of the [EnumerableTransform] stages,
+ * the word, and which characters the [LeetTransform] replaces with what. [name] turns a number back into
+ * these decisions (unranking), so different numbers give different names, and walking a range of
+ * an [IndexPermutation] gives random names that never repeat, without remembering any of them.
+ *
+ * The decisions are numbered in mixed radix: first the combination of stage variants,
+ * then the word among the ones that fit the length left by the stages, then a replacement choice per
+ * character of the name. Per-word and per-combination totals are precomputed, so unranking takes
+ * two binary searches.
+ *
+ * Some parts of a pipeline aren't enumerated:
+ * - [CapitalizationTransform] stages only change case, which doesn't make a different Minecraft name.
+ *   They are applied at random after everything else, if [name] gets a random generator.
+ * - The leet stage is enumerated as if it ran after all the stages that add characters.
+ *   If it [skips][LeetTransform.skip] characters, they must be the word's: the stages can't add to the start of
+ *   the name and the words must be at least that long, which is how [NameConstraints] sets it up.
+ * - Variants of stages whose chance is 0 can't come up, so they aren't enumerated.
+ *
+ * Two different numbers can still give the same text in rare cases, when a prefix and a word add up to
+ * another word (`the` + `re` = `there`), or when a replacement makes another word (`b0b` and `bob` → `b0b`).
+ * Duplicate words in [words] give duplicate names too.
+ */
+class NameSpace(
+    private val words: IndexedWordSource,
+    pipeline: Pipeline = Pipeline.DEFAULT,
+    val minLength: Int = MIN_LENGTH,
+    val maxLength: Int = MAX_LENGTH
+) {
+    private val stages: Array<EnumerableTransform>
+    private val stageOffsets: IntArray
+    private val leet: LeetTransform?
+    private val skip: Int
+    private val casing: Array<CharTransform>
+    private val casingOffsets: IntArray
+    private val planSize: Int
+
+    // The number of ways every ASCII character can come out of the leet stage, itself included,
+    // and the replacements at radix * c + 1 onwards
+    private val radix = IntArray(128) { 1 }
+    private val replacements = CharArray(128 * (CharTransform.MAX_CHOICES + 1))
+
+    // wordTotals[i]: the number of leet variants of the words before index i
+    private val wordTotals: LongArray
+
+    // Per combination of stage variants: its first number, the word index range that fits, and the leet variants of what the stages add
+    private val comboStarts: LongArray
+    private val comboWordStarts: IntArray
+    private val comboWordEnds: IntArray
+    private val comboMultipliers: LongArray
+
+    /**
+     * The number of names.
+     */
+    val size: Long
+
+    private val plans = ThreadLocal.withInitial { LongArray(planSize) }
+
+    init {
+        val stages = mutableListOf<EnumerableTransform>()
+        val casing = mutableListOf<CharTransform>()
+        var leet: LeetTransform? = null
+        for (stage in pipeline.transforms) {
+            when (stage) {
+                is EnumerableTransform -> stages += stage
+                is CapitalizationTransform -> casing += stage
+                is LeetTransform -> {
+                    require(leet == null) { "Only one leet stage can be enumerated" }
+                    leet = stage
+                }
+                else -> throw IllegalArgumentException("${stage::class.simpleName} can't be enumerated")
+            }
+        }
+        this.stages = stages.toTypedArray()
+        this.leet = leet
+        skip = leet?.skip ?: 0
+        this.casing = casing.toTypedArray()
+        stageOffsets = IntArray(stages.size)
+        casingOffsets = IntArray(casing.size)
+        var offset = 0
+        for (i in stages.indices) {
+            stageOffsets[i] = offset
+            offset += stages[i].planSize
+        }
+        for (i in casing.indices) {
+            casingOffsets[i] = offset
+            offset += casing[i].planSize
+        }
+        planSize = offset
+
+        if (leet != null) {
+            for (c in 0..<128) {
+                val options = (0..<leet.choices).map { leet.table[c * leet.choices + it] }.distinct() - c.toChar()
+                radix[c] = options.size + 1
+                options.forEachIndexed { i, it -> replacements[c * (CharTransform.MAX_CHOICES + 1) + i + 1] = it }
+            }
+        }
+
+        require(skip == 0 || words.lengthEnd(skip - 1) == 0) {
+            "The leet stage skips $skip characters, so all words must be at least that long"
+        }
+        val word = CharArray(words.maxLength)
+        wordTotals = LongArray(words.size + 1)
+        for (i in 0..<words.size) {
+            wordTotals[i + 1] = Math.addExact(wordTotals[i], leetVariants(word, skip, words.copyWord(i, word, 0)))
+        }
+
+        var combos = 1L
+        for (stage in stages) combos = Math.multiplyExact(combos, stage.variants.toLong())
+        require(combos <= MAX_COMBINATIONS) { "Too many combinations of stage variants: $combos" }
+        comboStarts = LongArray(combos.toInt() + 1)
+        comboWordStarts = IntArray(combos.toInt())
+        comboWordEnds = IntArray(combos.toInt())
+        comboMultipliers = LongArray(combos.toInt())
+
+        // What the stages add is found by applying them to a name that is only a placeholder for the word
+        val added = NameBuffer()
+        val plan = LongArray(planSize)
+        for (combo in 0..<combos.toInt()) {
+            added.clear()
+            added.append(PLACEHOLDER)
+            val addedLength = plan(combo, plan)
+            for (i in stages.indices) stages[i].apply(added, plan, stageOffsets[i])
+            val possible = possible(combo)
+            require(skip == 0 || !possible || added[0] == PLACEHOLDER) {
+                "The leet stage skips $skip characters, so the stages can't add to the start of the name"
+            }
+            val start = words.lengthStart(minLength - addedLength)
+            val end = if (possible) maxOf(start, words.lengthEnd(maxLength - addedLength)) else start
+            comboWordStarts[combo] = start
+            comboWordEnds[combo] = end
+            comboMultipliers[combo] = leetVariants(added.chars, 0, added.length)
+            comboStarts[combo + 1] = Math.addExact(
+                comboStarts[combo],
+                Math.multiplyExact(comboMultipliers[combo], wordTotals[end] - wordTotals[start])
+            )
+        }
+        size = comboStarts[combos.toInt()]
+    }
+
+    // The number of ways the characters from..<to can come out of the leet stage
+    private fun leetVariants(chars: CharArray, from: Int, to: Int): Long {
+        var variants = 1L
+        for (i in from..<to) {
+            if (chars[i].code < 128) variants = Math.multiplyExact(variants, radix[chars[i].code].toLong())
+        }
+        return variants
+    }
+
+    // Stores the variants of all stages for a combination, returns the number of characters they add
+    private fun plan(combo: Int, plan: LongArray): Int {
+        var rest = combo
+        var added = 0
+        for (i in stages.indices) {
+            val variant = rest % stages[i].variants
+            rest /= stages[i].variants
+            stages[i].plan(variant, plan, stageOffsets[i])
+            added += stages[i].added(variant)
+        }
+        return added
+    }
+
+    // Whether all the stage variants of a combination can come up
+    private fun possible(combo: Int): Boolean {
+        var rest = combo
+        for (stage in stages) {
+            if (!stage.possible(rest % stage.variants)) return false
+            rest /= stage.variants
+        }
+        return true
+    }
+
+    /**
+     * Writes the name with the number [index] into [name].
+     * @param random Decides the capitalization, which isn't part of the number. Names are lowercase if not set.
+     */
+    fun name(index: Long, name: NameBuffer, random: RandomGenerator? = null) {
+        if (index !in 0..<size) throw IndexOutOfBoundsException("Index $index, size $size")
+        val combo = search(comboStarts, 0, comboStarts.size - 1, index)
+        val start = comboWordStarts[combo]
+        val multiplier = comboMultipliers[combo]
+        val rest = index - comboStarts[combo]
+        val word = search(wordTotals, start, comboWordEnds[combo], wordTotals[start] + rest / multiplier)
+        var leetIndex = rest - (wordTotals[word] - wordTotals[start]) * multiplier
+
+        val plan = plans.get()
+        plan(combo, plan)
+        name.clear()
+        name.appendWord(words, word)
+        for (i in stages.indices) stages[i].apply(name, plan, stageOffsets[i])
+
+        if (leet != null) {
+            val chars = name.chars
+            for (i in skip..<name.length) {
+                val c = chars[i].code
+                if (c >= 128 || radix[c] == 1) continue
+                val choice = (leetIndex % radix[c]).toInt()
+                leetIndex /= radix[c]
+                if (choice > 0) chars[i] = replacements[c * (CharTransform.MAX_CHOICES + 1) + choice]
+            }
+        }
+
+        if (random != null) {
+            for (i in casing.indices) {
+                casing[i].plan(random, plan, casingOffsets[i])
+                casing[i].apply(name, plan, casingOffsets[i])
+            }
+        }
+    }
+
+    /**
+     * Splits the numbers into [shards] ranges of the same size, for separate runs to walk.
+     * @return The numbers of [shard], counting from 0.
+     */
+    fun shard(shard: Int, shards: Int): LongRange {
+        require(shards > 0 && shard in 0..<shards) { "Shard $shard out of $shards" }
+        fun start(i: Int) = i * (size / shards) + minOf(i.toLong(), size % shards)
+        return start(shard)..<start(shard + 1)
+    }
+
+    private companion object {
+        const val MAX_COMBINATIONS = 1 shl 24
+
+        // Not ASCII, so the leet stage leaves it alone
+        const val PLACEHOLDER = '\uFFFF'
+
+        // The last index in from..<to whose value is at most value
+        fun search(values: LongArray, from: Int, to: Int, value: Long): Int {
+            var low = from
+            var high = to - 1
+            while (low < high) {
+                val middle = (low + high + 1) ushr 1
+                if (values[middle] <= value) low = middle else high = middle - 1
+            }
+            return low
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package pr0gramm3r101.randomnickgen.generator
+
+import pr0gramm3r101.randomnickgen.corpus.WordSource
+import java.util.random.RandomGenerator
+import java.util.stream.Stream
+import java.util.stream.StreamSupport
+
+// Minecraft username length limits
+internal const val MIN_LENGTH = 3
+internal const val MAX_LENGTH = 16
+
+/**
+ * Generates random nicknames from the words of a [WordSource], decorated by the stages of a [Pipeline].
+ * With a [Pattern], names are filled in by the pattern instead, and only the character stages
+ * (leet and capitalization) of the pipeline run on them.
+ * The length limits of [NameConstraints] are kept by picking words that fit; for the rest of them,
+ * the words and the pipeline have to be constrained with [NameConstraints.apply] beforehand.
+ *
+ * Every step writes into one reusable [NameBuffer], so a nickname costs no allocations
+ * until it's turned into a [String]. All randomness comes from [random], so a seeded generator
+ * gives reproducible names. Instances aren't thread-safe, use one per thread, or use [stream]
+ * which splits off a generator per thread by itself.
+ */
+class NicknameGenerator @JvmOverloads constructor(
+    private val words: WordSource,
+    private val pipeline: Pipeline = Pipeline.DEFAULT,
+    private val random: RandomGenerator = newRandomGenerator(),
+    private val pattern: Pattern? = null,
+    private val constraints: NameConstraints = NameConstraints.NONE
+) {
+    private val stages =
+        if (pattern == null) pipeline.stages else Pipeline(pipeline.transforms.filterIsInstance<CharTransform>()).stages
+    private val filters = pipeline.filters.toTypedArray()
+    private val plan = LongArray(pipeline.planSize)
+    private val name = NameBuffer()
+
+    /**
+     * Generates a nickname.
+     * @param forceTruncate Allow words that make the name too long, and cut the name down to the maximum length
+     * @return A view of the nickname, valid until the next call.
+     * @throws IllegalStateException if the pipeline's filters reject thousands of names in a row,
+     * or no word fits the length left by thousands of plans of the stages in a row
+     */
+    @JvmOverloads
+    fun next(forceTruncate: Boolean = false): CharSequence {
+        for (attempt in 0..<MAX_ATTEMPTS) {
+            generate(forceTruncate)
+            if (filters.all { it.accepts(name) }) return name
+        }
+        throw IllegalStateException("The filters rejected $MAX_ATTEMPTS names in a row")
+    }
+
+    private fun generate(forceTruncate: Boolean) {
+        if (pattern != null) {
+            pattern.fill(name, random)
+            var offset = 0
+            for (stage in stages) {
+                stage.plan(random, plan, offset)
+                stage.apply(name, plan, offset)
+                offset += stage.planSize
+            }
+            return
+        }
+
+        // Let the stages decide first, so the word can be picked to fit into the length they leave
+        var attempts = 0
+        do {
+            check(attempts++ < MAX_ATTEMPTS) {
+                "No word fit the length left by the stages $MAX_ATTEMPTS times in a row, " +
+                        "the words can't make names of ${constraints.minLength}-${constraints.maxLength} characters"
+            }
+            var added = 0
+            var offset = 0
+            for (stage in stages) {
+                added += stage.plan(random, plan, offset)
+                offset += stage.planSize
+            }
+            name.clear()
+        } while (!name.appendWord(
+                words,
+                random,
+                constraints.minLength - added,
+                if (forceTruncate) Int.MAX_VALUE else constraints.maxLength - added
+            ))
+
+        var offset = 0
+        for (stage in stages) {
+            stage.apply(name, plan, offset)
+            offset += stage.planSize
+        }
+
+        name.truncate(constraints.maxLength)
+    }
+
+    /**
+     * @return An endless lazy sequence of nicknames, generated by this generator as they are consumed.
+     */
+    fun asSequence(forceTruncate: Boolean = false) = generateSequence { next(forceTruncate).toString() }
+
+    /**
+     * Creates a stream of nicknames with random streams split off this generator's, so it can run in parallel.
+     * Requires the generator's random to be a [RandomGenerator.SplittableGenerator]
+     * (which [newRandomGenerator] returns), otherwise the stream uses this generator and stays sequential.
+     *
+     * A seeded generator gives the same names in a sequential stream, in a parallel one they depend on how it's split.
+     * @param count The number of nicknames, endless if not set
+     */
+    @JvmOverloads
+    fun stream(count: Long = Long.MAX_VALUE, forceTruncate: Boolean = false): Stream<String> {
+        require(count >= 0) { "Negative count $count" }
+        return StreamSupport.stream(NicknameSpliterator(split() ?: this, 0, count, forceTruncate), false)
+    }
+
+    /**
+     * @return A new generator with the same words and pipeline and a random stream split off this one's,
+     * or `null` if the random can't be split.
+     */
+    internal fun split() = (random as? RandomGenerator.SplittableGenerator)?.let {
+        NicknameGenerator(words, pipeline, it.split(), pattern, constraints)
+    }
+
+    private companion object {
+        // Names rejected in a row by the filters, or plans in a row that no word fits, before giving up
+        const val MAX_ATTEMPTS = 10_000
+    }
+}
@@ -0,0 +1,43 @@
+package pr0gramm3r101.randomnickgen.generator
+
+import java.util.Spliterator
+import java.util.function.Consumer
+
+/**
+ * Generates the nicknames from [index] up to [fence] with [generator].
+ *
+ * Splitting hands the first half of the range to a generator split off this one,
+ * like the spliterators of [java.util.SplittableRandom] do, so every half can run on its own thread.
+ */
+internal class NicknameSpliterator(
+    private val generator: NicknameGenerator,
+    private var index: Long,
+    private val fence: Long,
+    private val forceTruncate: Boolean
+) : Spliterator<String> {
+    override fun tryAdvance(action: Consumer<in String>): Boolean {
+        if (index >= fence) return false
+        action.accept(generator.next(forceTruncate).toString())
+        index++
+        return true
+    }
+
+    override fun forEachRemaining(action: Consumer<in String>) {
+        while (index < fence) {
+            action.accept(generator.next(forceTruncate).toString())
+            index++
+        }
+    }
+
+    override fun trySplit(): Spliterator<String>? {
+        val middle = (index + fence) ushr 1
+        if (middle <= index) return null
+        val split = generator.split() ?: return null
+        return NicknameSpliterator(split, index, middle, forceTruncate).also { index = middle }
+    }
+
+    override fun estimateSize() = fence - index
+
+    override fun characteristics() =
+        Spliterator.SIZED or Spliterator.SUBSIZED or Spliterator.NONNULL or Spliterator.IMMUTABLE
+}
@@ -0,0 +1,150 @@
+package pr0gramm3r101.randomnickgen.generator
+
+import java.util.random.RandomGenerator
+
+/**
+ * One stage of nickname generation, such as adding a prefix or capitalizing letters.
+ *
+ * Stages work in two phases, so the word can be picked to fit the length the stages add:
+ * [plan] makes the random decisions for the next name before the word is known,
+ * and [apply] carries them out once the name is assembled.
+ * Decisions are kept in a `long[]` owned by the caller, so a stage can be shared between threads.
+ */
+interface NicknameTransform {
+    /**
+     * The number of longs this stage needs to store its decisions for one name.
+     */
+    val planSize: Int get() = 1
+
+    /**
+     * Makes the random decisions for the next name and stores them at [offset] in [plan].
+     * @return The number of characters this stage is going to add to the name.
+     */
+    fun plan(random: RandomGenerator, plan: LongArray, offset: Int): Int
+
+    /**
+     * Applies the decisions stored at [offset] in [plan] to [name].
+     */
+    fun apply(name: NameBuffer, plan: LongArray, offset: Int)
+}
+
+/**
+ * A stage that picks one of a fixed number of [variants], such as "no prefix" or "prefix 'the' joined
+ * with an underscore", so the names it makes can be counted and numbered by [NameSpace].
+ */
+interface EnumerableTransform : NicknameTransform {
+    /**
+     * The number of different decisions this stage can make.
+     */
+    val variants: Int
+
+    /**
+     * @return The number of characters [variant] adds to the name.
+     */
+    fun added(variant: Int): Int
+
+    /**
+     * @return Whether [variant] can come up at all, which it can't if its chance is 0.
+     */
+    fun possible(variant: Int): Boolean
+
+    /**
+     * Stores the decisions of [variant] at [offset] in [plan], for [apply] to carry out.
+     */
+    fun plan(variant: Int, plan: LongArray, offset: Int)
+}
+
+/**
+ * A stage that replaces characters in place, described as data instead of code:
+ * a replacement table for ASCII characters and a mask of the positions to replace.
+ * Only the first [MAX_LENGTH] positions are replaced, the rest of a longer name gets truncated anyway.
+ * Adjacent character stages are fused into a single pass over the name by [Pipeline].
+ */
+interface CharTransform : NicknameTransform {
+    /**
+     * The number of replacements every character can choose from, either 1 or [MAX_CHOICES].
+     */
+    val choices: Int get() = 1
+
+    /**
+     * The replacements of every ASCII character: the replacement number `k` of character `c`
+     * is at `c * choices + k`.
+     */
+    val table: CharArray
+
+    /**
+     * @return The positions to replace in the next name: bit `i` stands for position `i`.
+     */
+    fun mask(random: RandomGenerator): Long
+
+    override val planSize get() = if (choices > 1) 2 else 1
+
+    /**
+     * Stores the position mask, followed by 4 random bits per position that pick the replacement if there's a choice.
+     */
+    override fun plan(random: RandomGenerator, plan: LongArray, offset: Int): Int {
+        plan[offset] = mask(random)
+        if (choices > 1) plan[offset + 1] = random.nextLong()
+        return 0
+    }
+
+    override fun apply(name: NameBuffer, plan: LongArray, offset: Int) {
+        val mask = plan[offset]
+        val choiceBits = plan[offset + planSize - 1]
+        val choiceShift = if (choices > 1) 4 else 0
+        val chars = name.chars
+        for (i in 0..<minOf(name.length, MAX_LENGTH)) {
+            val char = chars[i]
+            if ((mask ushr i) and 1L != 0L && char.code < 128) {
+                val choice = (choiceBits ushr (i shl 2)).toInt() and (choices - 1)
+                chars[i] = table[(char.code shl choiceShift) or choice]
+            }
+        }
+    }
+
+    companion object {
+        const val MAX_CHOICES = 16
+    }
+}
+
+/**
+ * Several [CharTransform]s applied in a single pass over the name.
+ */
+class FusedCharTransform(private val parts: Array<CharTransform>) : NicknameTransform {
+    private val tables = Array(parts.size) { parts[it].table }
+    private val choiceShift = IntArray(parts.size) { if (parts[it].choices > 1) 4 else 0 }
+    private val choiceMask = IntArray(parts.size) { if (parts[it].choices > 1) CharTransform.MAX_CHOICES - 1 else 0 }
+    private val maskOffsets = IntArray(parts.size)
+    private val choiceOffsets = IntArray(parts.size)
+
+    override val planSize = parts.sumOf { it.planSize }
+
+    init {
+        var offset = 0
+        for (i in parts.indices) {
+            maskOffsets[i] = offset
+            // Single-choice parts have no choice bits, their choice mask of 0 ignores whatever is read
+            choiceOffsets[i] = offset + parts[i].planSize - 1
+            offset += parts[i].planSize
+        }
+    }
+
+    override fun plan(random: RandomGenerator, plan: LongArray, offset: Int): Int {
+        for (i in parts.indices) parts[i].plan(random, plan, offset + maskOffsets[i])
+        return 0
+    }
+
+    override fun apply(name: NameBuffer, plan: LongArray, offset: Int) {
+        val chars = name.chars
+        for (i in 0..<minOf(name.length, MAX_LENGTH)) {
+            var char = chars[i]
+            for (j in tables.indices) {
+                if ((plan[offset + maskOffsets[j]] ushr i) and 1L != 0L && char.code < 128) {
+                    val choice = (plan[offset + choiceOffsets[j]] ushr (i shl 2)).toInt() and choiceMask[j]
+                    char = tables[j][(char.code shl choiceShift[j]) or choice]
+                }
+            }
+            chars[i] = char
+        }
+    }
+}
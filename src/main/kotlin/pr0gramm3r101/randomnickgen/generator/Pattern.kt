@@ -0,0 +1,195 @@
+package pr0gramm3r101.randomnickgen.generator
+
+import pr0gramm3r101.randomnickgen.corpus.WordSource
+import java.util.random.RandomGenerator
+
+/**
+ * A nickname format such as `{prefix?}{word:4-8}{digits:2}{_?}`, compiled into a list of slots.
+ *
+ * Text outside braces is copied as is. Slots are:
+ * - `{word}`, `{word:N}`, `{word:N-M}`: a word, 3-16 characters long by default
+ * - `{digits:N}`, `{digits:N-M}`: random digits, 1 by default
+ * - `{prefix}`, `{suffix}`: one of the values of the pipeline's prefix or suffix stages
+ * - `{_}`: an underscore
+ * - `{a|b|c}`: one of the listed values
+ *
+ * A slot ending with `?` is left out half of the time.
+ *
+ * Length limits are worked out when the pattern is compiled: every slot knows the shortest and longest text
+ * it can make. While a name is filled in, each slot only picks text that leaves room for the shortest text of the
+ * slots after it, and that is long enough for the longest text of the slots after it to reach 3 characters.
+ * So names come out valid the first time, no name is made and then thrown away.
+ * Patterns that can't make a name of a valid length at all, because of gaps between the lengths of their slots,
+ * are rejected when they are compiled.
+ */
+class Pattern private constructor(private val slots: Array<Slot>) {
+    // The shortest and longest text of the slots after every slot
+    private val minAfter = IntArray(slots.size)
+    private val maxAfter = IntArray(slots.size)
+
+    init {
+        for (i in slots.size - 2 downTo 0) {
+            minAfter[i] = minAfter[i + 1] + slots[i + 1].minLength
+            maxAfter[i] = maxAfter[i + 1] + slots[i + 1].maxLength
+        }
+        require(slots.sumOf { it.minLength } <= MAX_LENGTH) { "The pattern makes names longer than $MAX_LENGTH characters" }
+        require(slots.sumOf { it.maxLength } >= MIN_LENGTH) { "The pattern makes names shorter than $MIN_LENGTH characters" }
+
+        // Bit n of totals: whether the slots so far can make n characters, only lengths up to MAX_LENGTH are kept
+        var totals = 1L
+        for (slot in slots) {
+            var next = 0L
+            for (length in 0..MAX_LENGTH) {
+                if (slot.lengths and (1L shl length) != 0L) next = next or (totals shl length)
+            }
+            totals = next and ((1L shl (MAX_LENGTH + 1)) - 1)
+        }
+        require(totals ushr MIN_LENGTH != 0L) { "The pattern can't make names of $MIN_LENGTH-$MAX_LENGTH characters" }
+    }
+
+    /**
+     * Fills [name] with a new name.
+     */
+    fun fill(name: NameBuffer, random: RandomGenerator) {
+        name.clear()
+        for (i in slots.indices) {
+            slots[i].fill(name, random, MIN_LENGTH - name.length - maxAfter[i], MAX_LENGTH - name.length - minAfter[i])
+        }
+    }
+
+    private interface Slot {
+        val minLength: Int
+        val maxLength: Int
+
+        /**
+         * The lengths of the text this slot can make, as a mask with bit n set for n characters.
+         */
+        val lengths: Long
+
+        /**
+         * Appends between [need] and [budget] characters. [need] is at most [maxLength],
+         * [budget] at least [minLength]. Slots whose lengths have gaps can add less than [need] if they have to.
+         */
+        fun fill(name: NameBuffer, random: RandomGenerator, need: Int, budget: Int)
+    }
+
+    private class WordSlot(private val words: WordSource, min: Int, max: Int) : Slot {
+        override val minLength = (min..max).firstOrNull { words.count(it, it) > 0 }
+            ?: throw IllegalArgumentException("No words of $min-$max characters")
+        override val maxLength = (min..max).last { words.count(it, it) > 0 }
+        override val lengths = (min..max).fold(0L) { mask, it -> if (words.count(it, it) > 0) mask or (1L shl it) else mask }
+
+        override fun fill(name: NameBuffer, random: RandomGenerator, need: Int, budget: Int) {
+            val max = minOf(maxLength, budget)
+            if (!name.appendWord(words, random, maxOf(minLength, need), max)) name.appendWord(words, random, minLength, max)
+        }
+    }
+
+    private class DigitsSlot(override val minLength: Int, override val maxLength: Int) : Slot {
+        override val lengths = (minLength..maxLength).fold(0L) { mask, it -> mask or (1L shl it) }
+
+        override fun fill(name: NameBuffer, random: RandomGenerator, need: Int, budget: Int) {
+            // The slots before can have added less than they needed to, then this one can't make up for all of it
+            val max = minOf(maxLength, budget)
+            repeat(random.nextInt(minOf(maxOf(minLength, need), max), max + 1)) {
+                name.append('0' + random.nextInt(10))
+            }
+        }
+    }
+
+    /**
+     * One of [values], picked from the ones with a fitting length.
+     */
+    private class ChoiceSlot(values: List<String>) : Slot {
+        init {
+            for (value in values) {
+                val char = value.firstOrNull { !(it in 'a'..'z' || it in 'A'..'Z' || it in '0'..'9' || it == '_') }
+                require(char == null) { "'$char' can't be in a username" }
+                require(value.length <= MAX_LENGTH) { "'$value' is longer than $MAX_LENGTH characters" }
+            }
+        }
+
+        private val values = values.sortedBy { it.length }.toTypedArray()
+        override val minLength = this.values.first().length
+        override val maxLength = this.values.last().length
+        override val lengths = this.values.fold(0L) { mask, it -> mask or (1L shl it.length) }
+
+        // upTo[n]: the number of values at most n characters long
+        private val upTo = IntArray(MAX_LENGTH + 1) { n -> this.values.count { it.length <= n } }
+
+        override fun fill(name: NameBuffer, random: RandomGenerator, need: Int, budget: Int) {
+            val end = upTo[minOf(budget, MAX_LENGTH)]
+            val start = if (need > 0) upTo[need - 1] else 0
+            name.append(values[if (start < end) random.nextInt(start, end) else random.nextInt(end)])
+        }
+    }
+
+    private class OptionalSlot(private val slot: Slot) : Slot {
+        override val minLength = 0
+        override val maxLength = slot.maxLength
+        override val lengths = slot.lengths or 1L
+
+        override fun fill(name: NameBuffer, random: RandomGenerator, need: Int, budget: Int) {
+            if ((need > 0 || random.nextBoolean()) && slot.minLength <= budget) slot.fill(name, random, need, budget)
+        }
+    }
+
+    companion object {
+        /**
+         * Compiles a pattern.
+         * @param words The words for `{word}` slots
+         * @param pipeline The pipeline whose prefix and suffix stages provide the values of `{prefix}` and `{suffix}`
+         * @throws IllegalArgumentException if the pattern is invalid or can't make a valid name
+         */
+        fun compile(pattern: String, words: WordSource, pipeline: Pipeline = Pipeline.DEFAULT): Pattern {
+            val slots = mutableListOf<Slot>()
+            var i = 0
+            while (i < pattern.length) {
+                if (pattern[i] != '{') {
+                    val end = pattern.indexOf('{', i).let { if (it < 0) pattern.length else it }
+                    require('}' !in pattern.substring(i, end)) { "Unexpected '}' at ${pattern.indexOf('}', i) + 1}" }
+                    slots += ChoiceSlot(listOf(pattern.substring(i, end)))
+                    i = end
+                    continue
+                }
+                val end = pattern.indexOf('}', i)
+                require(end >= 0) { "Unclosed '{' at ${i + 1}" }
+                val spec = pattern.substring(i + 1, end)
+                val slot = parseSlot(spec.removeSuffix("?"), words, pipeline)
+                slots += if (spec.endsWith('?')) OptionalSlot(slot) else slot
+                i = end + 1
+            }
+            return Pattern(slots.toTypedArray())
+        }
+
+        private fun parseSlot(spec: String, words: WordSource, pipeline: Pipeline): Slot {
+            val name = spec.substringBefore(':')
+            val range = if (':' in spec) parseRange(spec.substringAfter(':')) else null
+            return when {
+                name == "word" -> WordSlot(words, range?.first ?: MIN_LENGTH, range?.last ?: MAX_LENGTH)
+                name == "digits" -> DigitsSlot(range?.first ?: 1, range?.last ?: 1)
+                name == "prefix" || name == "suffix" -> {
+                    val values = pipeline.transforms.filterIsInstance<AffixTransform>()
+                        .filter { it.prefix == (name == "prefix") }
+                        .flatMap { it.values.asList() }
+                    require(values.isNotEmpty()) { "The pipeline has no $name stage for {$spec}" }
+                    ChoiceSlot(values.distinct())
+                }
+                name == "_" -> ChoiceSlot(listOf("_"))
+                '|' in spec -> ChoiceSlot(spec.split('|').also { values ->
+                    require(values.none { it.isEmpty() }) { "Empty value in {$spec}" }
+                })
+                else -> throw IllegalArgumentException("Unknown slot {$spec}")
+            }.also {
+                require(range == null || name == "word" || name == "digits") { "{$name} takes no length" }
+            }
+        }
+
+        private fun parseRange(range: String): IntRange {
+            val min = range.substringBefore('-').toIntOrNull()
+            val max = range.substringAfter('-').toIntOrNull()
+            require(min != null && max != null && min in 1..max && max <= MAX_LENGTH) { "Invalid length '$range'" }
+            return min..max
+        }
+    }
+}
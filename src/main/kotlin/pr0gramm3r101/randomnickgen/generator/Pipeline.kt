@@ -0,0 +1,154 @@
+package pr0gramm3r101.randomnickgen.generator
+
+import pr0gramm3r101.randomnickgen.filter.NameFilter
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * A list of [NicknameTransform] stages, compiled into a flat array.
+ *
+ * Pipelines are written one stage per line, as the stage name followed by `key=value` options:
+ * ```
+ * # Comment
+ * prefix chance=0.2 underscore=0.5 values=the,get,not
+ * suffix chance=0.2 underscore=0.5 values=lol,xd
+ * underscore start=0.3 end=0.3
+ * leet chance=0.2 map=o:0,i:1,e:3,a:4|@
+ * capitalize first=0.5 all=0.1 random=0.2
+ * ```
+ * A `leet` mapping can list several replacements separated by `|`, one of them is picked at random.
+ * Stages run in the order they are written. Runs of adjacent character stages (`leet` and `capitalize`)
+ * are fused into a single pass over the name. See `default.pipeline` for the built-in pipeline.
+ *
+ * Finished names also have to pass all [filters], names that don't are generated again.
+ */
+class Pipeline(stages: List<NicknameTransform>, val filters: List<NameFilter> = emptyList()) {
+    /**
+     * The stages as written, before fusing.
+     */
+    val transforms = stages.toList()
+
+    /**
+     * The compiled stages.
+     */
+    val stages: Array<NicknameTransform> = fuse(stages)
+
+    /**
+     * The number of longs needed to store the decisions of all stages for one name.
+     */
+    val planSize = this.stages.sumOf { it.planSize }
+
+    /**
+     * @return This pipeline with [filter] added to its filters.
+     */
+    fun withFilter(filter: NameFilter) = Pipeline(transforms, filters + filter)
+
+    companion object {
+        /**
+         * The built-in pipeline.
+         */
+        val DEFAULT by lazy {
+            parse(Pipeline::class.java.getResourceAsStream("/default.pipeline")!!.use { String(it.readAllBytes()) })
+        }
+
+        /**
+         * Reads a pipeline from a file.
+         * @throws IllegalArgumentException if the pipeline is invalid
+         */
+        fun load(path: Path) = parse(Files.readString(path))
+
+        /**
+         * Parses a pipeline.
+         * @throws IllegalArgumentException if the pipeline is invalid
+         */
+        fun parse(text: String): Pipeline {
+            val stages = mutableListOf<NicknameTransform>()
+            text.lines().forEachIndexed { i, line ->
+                val words = line.substringBefore('#').trim().split(Regex("\\s+"))
+                if (words[0].isEmpty()) return@forEachIndexed
+                try {
+                    val options = words.drop(1).associate {
+                        require('=' in it) { "Expected key=value, got '$it'" }
+                        it.substringBefore('=') to it.substringAfter('=')
+                    }
+                    stages += parseStage(words[0], Options(options))
+                } catch (e: IllegalArgumentException) {
+                    throw IllegalArgumentException("Line ${i + 1}: ${e.message}", e)
+                }
+            }
+            return Pipeline(stages)
+        }
+
+        private fun parseStage(name: String, options: Options): NicknameTransform {
+            val stage = when (name) {
+                "prefix", "suffix" -> AffixTransform(
+                    options.list("values").toTypedArray(),
+                    prefix = name == "prefix",
+                    chance = options.chance("chance"),
+                    underscoreChance = options.chance("underscore")
+                )
+                "underscore" -> UnderscoreTransform(options.chance("start"), options.chance("end"))
+                "leet" -> LeetTransform(
+                    options.list("map").associate {
+                        require(Regex(".:.(\\|.)*").matches(it)) { "Expected from:to or from:to|to..., got '$it'" }
+                        it[0] to it.substring(2).split('|').map { to -> to[0] }
+                    },
+                    options.chance("chance")
+                )
+                "capitalize" -> CapitalizationTransform(
+                    options.chance("first"),
+                    options.chance("all"),
+                    options.chance("random")
+                )
+                else -> throw IllegalArgumentException("Unknown stage '$name'")
+            }
+            options.checkAllUsed()
+            return stage
+        }
+
+        private fun fuse(stages: List<NicknameTransform>): Array<NicknameTransform> {
+            val result = mutableListOf<NicknameTransform>()
+            val run = mutableListOf<CharTransform>()
+            fun flush() {
+                when (run.size) {
+                    0 -> {}
+                    1 -> result += run[0]
+                    else -> result += FusedCharTransform(run.toTypedArray())
+                }
+                run.clear()
+            }
+            for (stage in stages) {
+                if (stage is CharTransform) {
+                    run += stage
+                } else {
+                    flush()
+                    result += stage
+                }
+            }
+            flush()
+            return result.toTypedArray()
+        }
+    }
+
+    private class Options(private val options: Map<String, String>) {
+        private val used = mutableSetOf<String>()
+
+        fun string(key: String): String {
+            used += key
+            return options[key] ?: throw IllegalArgumentException("Missing option '$key'")
+        }
+
+        fun list(key: String) = string(key).split(',').filter { it.isNotEmpty() }
+
+        fun chance(key: String): Double {
+            val value = string(key).toDoubleOrNull()
+            require(value != null && value in 0.0..1.0) { "Option '$key' must be a number between 0 and 1" }
+            return value
+        }
+
+        fun checkAllUsed() {
+            val unknown = options.keys - used
+            require(unknown.isEmpty()) { "Unknown options $unknown" }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package pr0gramm3r101.randomnickgen.generator
+
+import java.util.SplittableRandom
+import java.util.random.RandomGenerator
+import java.util.random.RandomGeneratorFactory
+
+/**
+ * The algorithm used for generation: fast, splittable into independent streams for other threads,
+ * and statistically much stronger than [java.util.Random].
+ */
+const val RANDOM_ALGORITHM = "L64X128MixRandom"
+
+/**
+ * Creates a random generator for nickname generation, seeded with [seed] for reproducible runs,
+ * or randomly if it's `null`.
+ * Falls back to [SplittableRandom] if the runtime doesn't include the `jdk.random` module.
+ */
+fun newRandomGenerator(seed: Long? = null): RandomGenerator.SplittableGenerator {
+    val factory = try {
+        RandomGeneratorFactory.of<RandomGenerator.SplittableGenerator>(RANDOM_ALGORITHM)
+    } catch (e: IllegalArgumentException) {
+        null
+    }
+    return when {
+        factory != null && seed != null -> factory.create(seed)
+        factory != null -> factory.create()
+        seed != null -> SplittableRandom(seed)
+        else -> SplittableRandom()
+    }
+}
@@ -0,0 +1,148 @@
+package pr0gramm3r101.randomnickgen.generator
+
+import java.util.random.RandomGenerator
+import kotlin.math.roundToInt
+
+/**
+ * With probability [chance], adds one of [values] before the name ([prefix]) or after it,
+ * joined to the name with an underscore with probability [underscoreChance].
+ */
+class AffixTransform(
+    val values: Array<String>,
+    val prefix: Boolean,
+    val chance: Double,
+    val underscoreChance: Double
+) : EnumerableTransform {
+    init {
+        require(values.isNotEmpty()) { "No values" }
+    }
+
+    // Variant 0 is no affix, the rest are the plans for every value with and without an underscore
+    override val variants = 1 + values.size * 2
+
+    override fun added(variant: Int) =
+        if (variant == 0) 0 else values[(variant - 1) ushr 1].length + ((variant - 1) and 1)
+
+    override fun possible(variant: Int) = when {
+        variant == 0 -> chance < 1
+        (variant - 1) and 1 == 1 -> chance > 0 && underscoreChance > 0
+        else -> chance > 0 && underscoreChance < 1
+    }
+
+    override fun plan(variant: Int, plan: LongArray, offset: Int) {
+        plan[offset] = variant - 1L
+    }
+
+    override fun plan(random: RandomGenerator, plan: LongArray, offset: Int): Int {
+        if (random.nextDouble() >= chance) {
+            plan[offset] = -1
+            return 0
+        }
+        val index = random.nextInt(values.size)
+        val underscore = random.nextDouble() < underscoreChance
+        plan[offset] = (index.toLong() shl 1) or (if (underscore) 1L else 0L)
+        return values[index].length + (if (underscore) 1 else 0)
+    }
+
+    override fun apply(name: NameBuffer, plan: LongArray, offset: Int) {
+        val decision = plan[offset]
+        if (decision < 0) return
+        val value = values[(decision ushr 1).toInt()]
+        val underscore = decision and 1L != 0L
+        if (prefix) {
+            if (underscore) name.prepend('_')
+            name.prepend(value)
+        } else {
+            if (underscore) name.append('_')
+            name.append(value)
+        }
+    }
+}
+
+/**
+ * Adds an underscore to the start of the name with probability [startChance],
+ * and to the end with probability [endChance].
+ */
+class UnderscoreTransform(val startChance: Double, val endChance: Double) : EnumerableTransform {
+    // The variants are the plans: bit 0 for the start, bit 1 for the end
+    override val variants = 4
+
+    override fun added(variant: Int) = Integer.bitCount(variant)
+
+    override fun possible(variant: Int) =
+        (if (variant and 1 != 0) startChance > 0 else startChance < 1) &&
+                (if (variant and 2 != 0) endChance > 0 else endChance < 1)
+
+    override fun plan(variant: Int, plan: LongArray, offset: Int) {
+        plan[offset] = variant.toLong()
+    }
+
+    override fun plan(random: RandomGenerator, plan: LongArray, offset: Int): Int {
+        val start = random.nextDouble() < startChance
+        val end = random.nextDouble() < endChance
+        plan[offset] = (if (start) 1L else 0L) or (if (end) 2L else 0L)
+        return (if (start) 1 else 0) + (if (end) 1 else 0)
+    }
+
+    override fun apply(name: NameBuffer, plan: LongArray, offset: Int) {
+        if (plan[offset] and 1L != 0L) name.prepend('_')
+        if (plan[offset] and 2L != 0L) name.append('_')
+    }
+}
+
+/**
+ * Replaces letters with similar-looking characters: every character that has a mapping
+ * is replaced with probability [chance], by one of its replacements picked at random.
+ *
+ * Positions are picked with one random byte each, compared against [chance] scaled to 0-256,
+ * so a whole name takes two random longs. Replacements are picked with 4 random bits,
+ * which is exactly uniform for 1, 2, 4, 8 or 16 replacements and close to it otherwise.
+ * The first [skip] characters are never replaced.
+ */
+class LeetTransform(val mappings: Map<Char, List<Char>>, val chance: Double, val skip: Int = 0) : CharTransform {
+    override val choices = if (mappings.values.all { it.size == 1 }) 1 else CharTransform.MAX_CHOICES
+
+    override val table = CharArray(128 * choices) { (it / choices).toChar() }
+
+    private val threshold = (chance * 256).roundToInt()
+
+    init {
+        for ((from, to) in mappings) {
+            require(from.code < 128) { "Not an ASCII character: $from" }
+            require(to.size in 1..CharTransform.MAX_CHOICES) { "$from must have 1-${CharTransform.MAX_CHOICES} replacements" }
+            for (k in 0..<choices) {
+                table[from.code * choices + k] = to[k * to.size / choices]
+            }
+        }
+    }
+
+    override fun mask(random: RandomGenerator): Long {
+        var mask = 0L
+        for (half in 0..<MAX_LENGTH / 8) {
+            val bytes = random.nextLong()
+            for (i in 0..<8) {
+                if ((bytes ushr (i shl 3)).toInt() and 0xFF < threshold) mask = mask or (1L shl (half * 8 + i))
+            }
+        }
+        return if (skip >= Long.SIZE_BITS) 0 else mask and (-1L shl skip)
+    }
+}
+
+/**
+ * Uppercases the first character with probability [firstChance], otherwise the whole name with
+ * probability [allChance], otherwise every character with a probability of 1/2 with probability [randomChance].
+ */
+class CapitalizationTransform(
+    private val firstChance: Double,
+    private val allChance: Double,
+    private val randomChance: Double
+) : CharTransform {
+    override val table = CharArray(128) { it.toChar().uppercaseChar() }
+
+    override fun mask(random: RandomGenerator) = when {
+        random.nextDouble() < firstChance -> 1L
+        random.nextDouble() < allChance -> -1L
+        random.nextDouble() < randomChance -> random.nextLong()
+        else -> 0L
+    }
+}
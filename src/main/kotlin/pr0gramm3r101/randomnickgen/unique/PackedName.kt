@@ -0,0 +1,148 @@
+package pr0gramm3r101.randomnickgen.unique
+
+/**
+ * Packs a Minecraft name into two longs: 16 characters of 6 bits each, from the 63 characters
+ * `0-9`, `A-Z`, `_` and `a-z`, with code 0 as the padding after the end of the name.
+ *
+ * The [high] long holds characters 0-9 in its lowest 60 bits and the [low] long characters 10-15 in its lowest 36 bits,
+ * first character in the highest bits. Codes follow ASCII order, so comparing packed names as unsigned numbers,
+ * high long first, orders them like their text. A name too long or with other characters doesn't fit,
+ * see [fits]. No name packs to `(0, 0)`, so collections can use it to mark empty slots.
+ */
+object PackedName {
+    const val MAX_LENGTH = 16
+    private const val HIGH_CHARS = 10
+    private const val BITS = 6
+    private const val CODE_MASK = (1L shl BITS) - 1
+
+    // Codes of ASCII characters, -1 if they don't fit
+    private val codes = ByteArray(128) { -1 }
+    private val chars = CharArray(64)
+
+    init {
+        var code = 1
+        for (char in ('0'..'9') + ('A'..'Z') + '_' + ('a'..'z')) {
+            codes[char.code] = code.toByte()
+            chars[code++] = char
+        }
+    }
+
+    private const val UPPER_FIRST = 11L
+    private const val UPPER_LAST = 36L
+    private const val CASE_OFFSET = 27L
+
+    /**
+     * @return Whether [name] can be packed: it's 1-16 characters long and only has characters from the alphabet.
+     */
+    fun fits(name: CharSequence): Boolean {
+        if (name.length !in 1..MAX_LENGTH) return false
+        for (i in 0..<name.length) {
+            if (name[i].code >= 128 || codes[name[i].code] < 0) return false
+        }
+        return true
+    }
+
+    /**
+     * @return The high long of [name].
+     * @throws IllegalArgumentException if [name] doesn't [fit][fits]
+     */
+    fun high(name: CharSequence) = pack(name, 0, HIGH_CHARS)
+
+    /**
+     * @return The low long of [name].
+     * @throws IllegalArgumentException if [name] doesn't [fit][fits]
+     */
+    fun low(name: CharSequence): Long {
+        require(name.length <= MAX_LENGTH) { "Name longer than $MAX_LENGTH characters: $name" }
+        return pack(name, HIGH_CHARS, MAX_LENGTH - HIGH_CHARS)
+    }
+
+    private fun pack(name: CharSequence, from: Int, count: Int): Long {
+        var packed = 0L
+        for (i in from..<from + count) {
+            packed = packed shl BITS
+            if (i < name.length) {
+                val char = name[i]
+                val code = if (char.code < 128) codes[char.code].toInt() else -1
+                require(code >= 0) { "Character '$char' doesn't fit into a packed name" }
+                packed = packed or code.toLong()
+            }
+        }
+        return packed
+    }
+
+    /**
+     * @return The name packed into [high] and [low].
+     */
+    fun decode(high: Long, low: Long): String {
+        val result = StringBuilder(MAX_LENGTH)
+        unpack(high, HIGH_CHARS, result)
+        unpack(low, MAX_LENGTH - HIGH_CHARS, result)
+        return result.toString()
+    }
+
+    private fun unpack(packed: Long, count: Int, result: StringBuilder) {
+        for (i in count - 1 downTo 0) {
+            val code = ((packed ushr (i * BITS)) and CODE_MASK).toInt()
+            if (code == 0) return
+            result.append(chars[code])
+        }
+    }
+
+    /**
+     * @return [packed] (either long) with all its letters lowercase.
+     */
+    fun lowercase(packed: Long): Long {
+        var result = packed
+        for (i in 0..<HIGH_CHARS) {
+            val code = (packed ushr (i * BITS)) and CODE_MASK
+            if (code in UPPER_FIRST..UPPER_LAST) result += CASE_OFFSET shl (i * BITS)
+        }
+        return result
+    }
+
+    /**
+     * @return Whether two packed names are the same, ignoring case.
+     */
+    fun equalsIgnoreCase(high1: Long, low1: Long, high2: Long, low2: Long) =
+        (high1 == high2 || lowercase(high1) == lowercase(high2)) && (low1 == low2 || lowercase(low1) == lowercase(low2))
+
+    /**
+     * Compares two packed names like their text.
+     */
+    fun compare(high1: Long, low1: Long, high2: Long, low2: Long): Int {
+        val result = java.lang.Long.compareUnsigned(high1, high2)
+        return if (result != 0) result else java.lang.Long.compareUnsigned(low1, low2)
+    }
+
+    /**
+     * Compares two packed names like their lowercase text.
+     */
+    fun compareIgnoreCase(high1: Long, low1: Long, high2: Long, low2: Long) =
+        compare(lowercase(high1), lowercase(low1), lowercase(high2), lowercase(low2))
+
+    /**
+     * @return A 64-bit fingerprint of the lowercase form of [name], for names that don't [fit][fits].
+     */
+    fun fingerprint(name: CharSequence): Long {
+        var hash = name.length.toLong()
+        for (i in 0..<name.length) {
+            hash = (hash xor name[i].lowercaseChar().code.toLong()) * -0x61c8864680b583ebL
+            hash = hash xor (hash ushr 29)
+        }
+        // murmur3 finalizer, so every bit depends on every character
+        hash = (hash xor (hash ushr 33)) * -0xae502812aa7333L
+        hash = (hash xor (hash ushr 33)) * -0x3b314601e57a13adL
+        return hash xor (hash ushr 33)
+    }
+
+    /**
+     * @return A well-mixed 64-bit hash of a packed name, so its low bits can index a hash table.
+     */
+    fun hash(high: Long, low: Long): Long {
+        var hash = (high * -0x61c8864680b583ebL) xor low
+        hash = (hash xor (hash ushr 33)) * -0xae502812aa7333L
+        hash = (hash xor (hash ushr 33)) * -0x3b314601e57a13adL
+        return hash xor (hash ushr 33)
+    }
+}
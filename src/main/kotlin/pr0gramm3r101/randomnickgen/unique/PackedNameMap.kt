@@ -0,0 +1,145 @@
+package pr0gramm3r101.randomnickgen.unique
+
+/**
+ * A map from names to longs that ignores case, with the names stored as [PackedName]s
+ * in one open-addressing table: 24 bytes per slot and no objects per entry. The table doubles when
+ * it gets 3/4 full. Names must [fit][PackedName.fits]. Not thread-safe.
+ */
+class PackedNameMap(capacity: Int = 16) {
+    private var keys: LongArray
+    private var values: LongArray
+    private var mask: Int
+
+    /**
+     * The number of names in the map.
+     */
+    var size = 0
+        private set
+
+    init {
+        require(capacity > 0) { "Capacity $capacity out of range" }
+        val slots = Integer.highestOneBit(maxOf(capacity + capacity / 3, 2) - 1) shl 1
+        keys = LongArray(slots * 2)
+        values = LongArray(slots)
+        mask = slots - 1
+    }
+
+    /**
+     * @return The value of [name], or [default] if it's not in the map.
+     */
+    fun get(name: CharSequence, default: Long = NO_VALUE) =
+        get(PackedName.lowercase(PackedName.high(name)), PackedName.lowercase(PackedName.low(name)), default)
+
+    /**
+     * @return The value of a lowercase packed name, or [default] if it's not in the map.
+     */
+    fun get(high: Long, low: Long, default: Long = NO_VALUE): Long {
+        val slot = find(high, low)
+        return if (keys[slot * 2] == EMPTY) default else values[slot]
+    }
+
+    operator fun contains(name: CharSequence) =
+        keys[find(PackedName.lowercase(PackedName.high(name)), PackedName.lowercase(PackedName.low(name))) * 2] != EMPTY
+
+    /**
+     * Sets the value of [name].
+     */
+    operator fun set(name: CharSequence, value: Long) =
+        put(PackedName.lowercase(PackedName.high(name)), PackedName.lowercase(PackedName.low(name)), value)
+
+    /**
+     * Sets the value of a lowercase packed name.
+     */
+    fun put(high: Long, low: Long, value: Long) {
+        val slot = find(high, low)
+        values[slot] = value
+        if (keys[slot * 2] != EMPTY) return
+        keys[slot * 2] = high
+        keys[slot * 2 + 1] = low
+        if (++size > (mask + 1) / 4 * 3) resize()
+    }
+
+    /**
+     * Removes [name] from the map.
+     * @return Whether it was in the map.
+     */
+    fun remove(name: CharSequence) =
+        remove(PackedName.lowercase(PackedName.high(name)), PackedName.lowercase(PackedName.low(name)))
+
+    /**
+     * Removes a lowercase packed name from the map.
+     * @return Whether it was in the map.
+     */
+    fun remove(high: Long, low: Long): Boolean {
+        var slot = find(high, low)
+        if (keys[slot * 2] == EMPTY) return false
+        size--
+        // Move later entries of the same probe run back into the hole, so lookups never stop early
+        var next = slot
+        while (true) {
+            next = (next + 1) and mask
+            val nextHigh = keys[next * 2]
+            if (nextHigh == EMPTY) break
+            val home = PackedName.hash(nextHigh, keys[next * 2 + 1]).toInt() and mask
+            // Entries whose home lies cyclically in (slot, next] are still reachable and stay
+            if ((next - home and mask) >= (next - slot and mask)) {
+                keys[slot * 2] = nextHigh
+                keys[slot * 2 + 1] = keys[next * 2 + 1]
+                values[slot] = values[next]
+                slot = next
+            }
+        }
+        keys[slot * 2] = EMPTY
+        keys[slot * 2 + 1] = EMPTY
+        return true
+    }
+
+    /**
+     * Calls [action] with every lowercase packed name in the map and its value.
+     */
+    inline fun forEach(action: (high: Long, low: Long, value: Long) -> Unit) {
+        for (slot in 0..<slotCount) {
+            val high = keyHigh(slot)
+            if (high != 0L) action(high, keyLow(slot), valueAt(slot))
+        }
+    }
+
+    @PublishedApi internal val slotCount get() = mask + 1
+    @PublishedApi internal fun keyHigh(slot: Int) = keys[slot * 2]
+    @PublishedApi internal fun keyLow(slot: Int) = keys[slot * 2 + 1]
+    @PublishedApi internal fun valueAt(slot: Int) = values[slot]
+
+    // The slot holding the name, or the empty slot where it would go
+    private fun find(high: Long, low: Long): Int {
+        var slot = PackedName.hash(high, low).toInt() and mask
+        while (true) {
+            val slotHigh = keys[slot * 2]
+            if (slotHigh == EMPTY || (slotHigh == high && keys[slot * 2 + 1] == low)) return slot
+            slot = (slot + 1) and mask
+        }
+    }
+
+    private fun resize() {
+        val oldKeys = keys
+        val oldValues = values
+        keys = LongArray(oldKeys.size * 2)
+        values = LongArray(oldValues.size * 2)
+        mask = oldValues.size * 2 - 1
+        for (slot in oldValues.indices) {
+            val high = oldKeys[slot * 2]
+            if (high == EMPTY) continue
+            val target = find(high, oldKeys[slot * 2 + 1])
+            keys[target * 2] = high
+            keys[target * 2 + 1] = oldKeys[slot * 2 + 1]
+            values[target] = oldValues[slot]
+        }
+    }
+
+    companion object {
+        /**
+         * The default value for names that aren't in the map.
+         */
+        const val NO_VALUE = Long.MIN_VALUE
+        private const val EMPTY = 0L
+    }
+}
@@ -0,0 +1,154 @@
+package pr0gramm3r101.randomnickgen.unique
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+
+/**
+ * A thread-safe set of names that ignores case, stored as [PackedName]s in one open-addressing table,
+ * so every name takes two longs and no [String] is kept.
+ *
+ * Names that don't [fit][PackedName.fits] are stored as their [PackedName.fingerprint] instead,
+ * marked by the top bit of the high long, and are told apart only as well as fingerprints are.
+ *
+ * The table takes 16 bytes per slot and is at most 3/4 full; it starts with room for [initialCapacity] names
+ * and doubles when it's full, up to [MAX_CAPACITY] names. A thread adding a name claims the slot by
+ * a CAS on the high long with a busy bit set, writes the low long and then clears the bit;
+ * threads that meet a busy slot wait for it. Adding and looking up hold a shared lock, and only doubling
+ * the table takes it exclusively.
+ */
+class PackedNameSet(initialCapacity: Int = 1024) {
+    @Volatile
+    private var slots: AtomicLongArray
+    @Volatile
+    private var mask: Int
+    private val count = AtomicInteger()
+    private val resizeLock = ReentrantReadWriteLock()
+
+    init {
+        require(initialCapacity in 1..MAX_CAPACITY) { "Capacity $initialCapacity out of range" }
+        val size = Integer.highestOneBit(maxOf(initialCapacity + initialCapacity / 3, 2) - 1) shl 1
+        slots = AtomicLongArray(size * 2)
+        mask = size - 1
+    }
+
+    /**
+     * The number of names in the set.
+     */
+    val size get() = count.get()
+
+    /**
+     * The number of names that fit before the table doubles.
+     */
+    val capacity get() = (mask + 1) / 4 * 3
+
+    /**
+     * Adds a name, ignoring case.
+     * @return `false` if the name is already in the set.
+     * @throws IllegalStateException if the set already holds [MAX_CAPACITY] names
+     */
+    fun add(name: CharSequence): Boolean {
+        if (!PackedName.fits(name)) return add(FINGERPRINT or (PackedName.fingerprint(name) ushr 2), 0)
+        return add(PackedName.lowercase(PackedName.high(name)), PackedName.lowercase(PackedName.low(name)))
+    }
+
+    /**
+     * Adds a lowercase packed name.
+     * @return `false` if the name is already in the set.
+     * @throws IllegalStateException if the set already holds [MAX_CAPACITY] names
+     */
+    fun add(high: Long, low: Long): Boolean {
+        while (true) {
+            resizeLock.read { insert(high, low)?.let { return it } }
+            grow()
+        }
+    }
+
+    // Whether the name was added, or null if the table is full
+    private fun insert(high: Long, low: Long): Boolean? {
+        val slots = slots
+        val mask = mask
+        var i = PackedName.hash(high, low).toInt() and mask
+        while (true) {
+            val slotHigh = awaitHigh(slots, i)
+            if (slotHigh == high && slots.get(i * 2 + 1) == low) return false
+            if (slotHigh == EMPTY) {
+                if (count.incrementAndGet() > (mask + 1) / 4 * 3) {
+                    count.decrementAndGet()
+                    return null
+                }
+                if (slots.compareAndSet(i * 2, EMPTY, high or BUSY)) {
+                    slots.set(i * 2 + 1, low)
+                    slots.set(i * 2, high)
+                    return true
+                }
+                count.decrementAndGet()
+                // Lost the slot to another thread, which might have added the same name
+                continue
+            }
+            i = (i + 1) and mask
+        }
+    }
+
+    operator fun contains(name: CharSequence): Boolean {
+        if (!PackedName.fits(name)) return contains(FINGERPRINT or (PackedName.fingerprint(name) ushr 2), 0)
+        return contains(PackedName.lowercase(PackedName.high(name)), PackedName.lowercase(PackedName.low(name)))
+    }
+
+    /**
+     * @return Whether the set contains a lowercase packed name.
+     */
+    fun contains(high: Long, low: Long) = resizeLock.read { find(high, low) }
+
+    private fun find(high: Long, low: Long): Boolean {
+        val slots = slots
+        val mask = mask
+        var i = PackedName.hash(high, low).toInt() and mask
+        while (true) {
+            val slotHigh = awaitHigh(slots, i)
+            if (slotHigh == high && slots.get(i * 2 + 1) == low) return true
+            if (slotHigh == EMPTY) return false
+            i = (i + 1) and mask
+        }
+    }
+
+    /**
+     * Doubles the table if it's still full once no other thread is adding.
+     */
+    private fun grow() = resizeLock.write {
+        if (count.get() < (mask + 1) / 4 * 3) return
+        check(mask + 1 < MAX_SLOTS) { "More than $MAX_CAPACITY unique names" }
+        val old = slots
+        val size = (mask + 1) * 2
+        val grown = AtomicLongArray(size * 2)
+        for (slot in 0..mask) {
+            val high = old.get(slot * 2)
+            if (high == EMPTY) continue
+            var i = PackedName.hash(high, old.get(slot * 2 + 1)).toInt() and (size - 1)
+            while (grown.get(i * 2) != EMPTY) i = (i + 1) and (size - 1)
+            grown.set(i * 2, high)
+            grown.set(i * 2 + 1, old.get(slot * 2 + 1))
+        }
+        slots = grown
+        mask = size - 1
+    }
+
+    private fun awaitHigh(slots: AtomicLongArray, slot: Int): Long {
+        var high = slots.get(slot * 2)
+        while (high and BUSY != 0L) {
+            Thread.onSpinWait()
+            high = slots.get(slot * 2)
+        }
+        return high
+    }
+
+    companion object {
+        private const val MAX_SLOTS = 1 shl 29
+        const val MAX_CAPACITY = MAX_SLOTS / 4 * 3
+        private const val EMPTY = 0L
+        private const val BUSY = 1L shl 62
+        private const val FINGERPRINT = Long.MIN_VALUE
+    }
+}
@@ -4,11 +4,15 @@ import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
 import java.nio.charset.StandardCharsets;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 
 /**
  * Contains utilities for random generation.
+ * <br/>
+ * Every method has an overload that takes a {@link RandomGenerator}, for seeded or per-thread generators.
+ * The other overloads use {@link ThreadLocalRandom}, which is never shared between threads.
  * @author morozovit
  */
 @SuppressWarnings("unused")
@@ -51,8 +55,18 @@ public final class RandomUtil {
      * @return An integer.
      */
     public static int integer(int min,int max) {
-        max++;
-        return (int) (Math.random() * (max - min)) + min;
+        return integer(ThreadLocalRandom.current(), min, max);
+    }
+
+    /**
+     * Generates a random integer between <code>min</code> and <code>max</code> parameters.
+     * @param random The random generator to use
+     * @param min The minimum value
+     * @param max The maximum value
+     * @return An integer.
+     */
+    public static int integer(@NotNull RandomGenerator random, int min, int max) {
+        return random.nextInt(min, max + 1);
     }
 
 
@@ -66,8 +80,21 @@ public final class RandomUtil {
      */
     @Contract("_ -> new")
     public static @NotNull String string(int length) {
+        return string(ThreadLocalRandom.current(), length);
+    }
+
+    /**
+     * Generates a random string of specified length.
+     * The string consists of random bytes, which are then converted to a string using the UTF-8 character encoding.
+     *
+     * @param random The random generator to use
+     * @param length The desired length of the random string.
+     * @return A random string of the specified length.
+     */
+    @Contract("_, _ -> new")
+    public static @NotNull String string(@NotNull RandomGenerator random, int length) {
         byte[] bytes = new byte[length];
-        new Random().nextBytes(bytes);
+        random.nextBytes(bytes);
         return new String(bytes, StandardCharsets.UTF_8);
     }
 
@@ -80,7 +107,19 @@ public final class RandomUtil {
      * @return A random string.
      */
     public static @NotNull String string(int length, int leftlimit, int rightlimit) {
-        Random random = new Random();
+        return string(ThreadLocalRandom.current(), length, leftlimit, rightlimit);
+    }
+
+    /**
+     * Generates a random string of specified length.
+     * You can specify the range of ASCII characters that can be included in the string.
+     * @param random The random generator to use
+     * @param length The string length.
+     * @param leftlimit The minimum ASCII character number.
+     * @param rightlimit The maximum ASCII character number.
+     * @return A random string.
+     */
+    public static @NotNull String string(@NotNull RandomGenerator random, int length, int leftlimit, int rightlimit) {
         StringBuilder buffer = new StringBuilder(length);
         for (int i = 0; i < length; i++) {
             int randomLimitedInt = leftlimit + (int)
@@ -100,14 +139,34 @@ public final class RandomUtil {
      * @return A random string.
     */
     public static @NotNull String string(int length, int leftlimit, int rightlimit, boolean randomCapitalization) {
-        String s = string(length, leftlimit, rightlimit);
+        return string(ThreadLocalRandom.current(), length, leftlimit, rightlimit, randomCapitalization);
+    }
+
+    /**
+     * Generates a random string of specified length.
+     * You can specify the range of ASCII characters that can be included in the string.
+     * @param random The random generator to use
+     * @param length The string length.
+     * @param leftlimit The minimum ASCII character number.
+     * @param rightlimit The maximum ASCII character number.
+     * @param randomCapitalization Determines whether the string should be capitalized randomly.
+     * @return A random string.
+     */
+    public static @NotNull String string(
+            @NotNull RandomGenerator random,
+            int length,
+            int leftlimit,
+            int rightlimit,
+            boolean randomCapitalization
+    ) {
+        String s = string(random, length, leftlimit, rightlimit);
         if (randomCapitalization) {
             StringBuilder sb = new StringBuilder();
             String i2;
             for (int i = 0; i<s.length(); i++) {
                 i2 = String.valueOf(s.charAt(i));
 
-                int rnd = RandomUtil.integer(1,2);
+                int rnd = RandomUtil.integer(random, 1, 2);
                 switch (rnd) {
                     case 1:
                         sb.append(i2.toLowerCase());
@@ -131,7 +190,16 @@ public final class RandomUtil {
      * @return <code>true</code> or <code>false</code>
      */
     public static boolean bool() {
-        return integer(1,2) == 2;
+        return bool(ThreadLocalRandom.current());
+    }
+
+    /**
+     * A random boolean with a 50%/50% chance.
+     * @param random The random generator to use
+     * @return <code>true</code> or <code>false</code>
+     */
+    public static boolean bool(@NotNull RandomGenerator random) {
+        return random.nextBoolean();
     }
 
 }